@@ -25,6 +25,7 @@ package org.talframework.util.beans;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * This interface represents a definition of a JavaBean.
@@ -34,6 +35,13 @@ import java.util.Collection;
  * at no time are you exposed to any reflection classes,
  * this enables you to implement this interface in a 
  * non-generic fashion if required.
+ * 
+ * <p>Each property has an index, which is its position when
+ * the properties are in alphabetical order of their names.
+ * The index of a property is therefore stable across JVMs and
+ * only changes if the properties of the bean change, so it 
+ * can be used for positional formats. All the lists of 
+ * properties returned by a definition are in index order.</p>
  *
  * @author Tom Spencer
  */
@@ -51,13 +59,49 @@ public interface BeanDefinition {
      */
     public Object newInstance();
     
+    /**
+     * Creates a new instance of this bean passing the values of
+     * the properties in {@link #getConstructorProperties()} to
+     * its constructor. This allows immutable beans to be created
+     * in one call. If the bean has no such constructor this is
+     * the same as {@link #newInstance()}.
+     * 
+     * <p>Note: A property without a value (null) is passed to the
+     * constructor as null, or if the parameter is a primitive, as
+     * its default value (i.e. 0 or false). A missing value is
+     * therefore not distinguished from one that was 0 or false.</p>
+     * 
+     * @param values The value of each property by its index (see {@link PropertyHandle#getIndex()}), values of other properties are ignored
+     * @return The new instance
+     */
+    public Object newInstance(Object[] values);
+    
+    /**
+     * Call to get the properties passed to the constructor 
+     * when calling {@link #newInstance(Object[])}. The 
+     * constructor is a public one marked with 
+     * {@link java.beans.ConstructorProperties}.
+     * 
+     * @return The properties in the order they are passed (empty if there is no such constructor)
+     */
+    public List<String> getConstructorProperties();
+    
     /**
      * Call to get all the property names of this bean
      * 
-     * @return The property names of this bean
+     * @return The property names of this bean in index order
      */
     public Collection<String> getProperties();
     
+    /**
+     * Call to get the index of a property, its position in
+     * alphabetical order of all the properties of this bean
+     * 
+     * @param name The name of the property
+     * @return The index or -1 if the property does not exist
+     */
+    public int getPropertyIndex(String name);
+    
     /**
      * Call to get all the read-only properties, those
      * with a getter, but no setter
@@ -99,6 +143,59 @@ public interface BeanDefinition {
      * @return True if it exists, false otherwise
      */
     public boolean hasProperty(String name, Class<?> type);
+    
+    /**
+     * Call to resolve the handle for a property. The handle
+     * can then be held onto and used to read and write the
+     * property without any further lookup by name.
+     * 
+     * @param name The name of the property
+     * @return The handle for the property or null if it does not exist
+     */
+    public PropertyHandle getPropertyHandle(String name);
+    
+    /**
+     * Call to get a compiled path through nested properties
+     * of this bean, such as "address.lines[2].postcode". The
+     * path is parsed once and then cached against this
+     * definition.
+     * 
+     * @param expression The path expression
+     * @return The compiled path
+     * @throws IllegalArgumentException If the expression is invalid
+     */
+    public PropertyPath getPropertyPath(String expression);
+    
+    /**
+     * Reads all the properties of the bean in one call. The
+     * value of each property is placed in the array at its
+     * index (see {@link PropertyHandle#getIndex()}). Properties
+     * that cannot be read are set to null.
+     * 
+     * @param obj The object to read from
+     * @param into The array to read into, must be at least as long as the number of properties
+     */
+    public void readAll(Object obj, Object[] into);
+    
+    /**
+     * Writes all the properties of the bean in one call. The
+     * value of each property is taken from the array at its
+     * index (see {@link PropertyHandle#getIndex()}). Properties
+     * that cannot be written are ignored, as are null values
+     * for primitive properties.
+     * 
+     * @param obj The object to write to
+     * @param from The array of values, must be at least as long as the number of properties
+     */
+    public void writeAll(Object obj, Object[] from);
+    
+    /**
+     * Call to get the handles of all the properties of this
+     * bean. The handles are held in the list at their index.
+     * 
+     * @return The handles for all properties
+     */
+    public List<PropertyHandle> getPropertyHandles();
 
     /**
      * Call to get a properties type
@@ -128,6 +225,66 @@ public interface BeanDefinition {
      */
     public Type getPropertyGenericType(String name);
     
+    /**
+     * Call to get the type of the elements of a collection
+     * or array property. Any type variables are resolved
+     * against the bean class, so a List&lt;T&gt; property
+     * declared in a generic superclass has the type given
+     * for T by the bean.
+     * 
+     * @param name The name of the property
+     * @return The element type or null if not a collection or it cannot be determined
+     */
+    public Class<?> getPropertyElementType(String name);
+    
+    /**
+     * Call to get the type of the keys of a map property,
+     * resolved in the same way as {@link #getPropertyElementType(String)}
+     * 
+     * @param name The name of the property
+     * @return The key type or null if not a map or it cannot be determined
+     */
+    public Class<?> getPropertyKeyType(String name);
+    
+    /**
+     * Call to get the type of the values of a map property,
+     * resolved in the same way as {@link #getPropertyElementType(String)}
+     * 
+     * @param name The name of the property
+     * @return The value type or null if not a map or it cannot be determined
+     */
+    public Class<?> getPropertyValueType(String name);
+    
+    /**
+     * Call to get an annotation on a property, whether it is
+     * on the getter, setter or field of the same name.
+     * 
+     * @param name The property to get annotation for
+     * @param annotation The annotation type
+     * @return The annotation or null if not present
+     */
+    public <T extends Annotation> T getAnnotation(String name, Class<T> annotation);
+    
+    /**
+     * Determines if a property carries an annotation, either
+     * on its getter, setter or field, or as a meta annotation
+     * of any of the annotations on those.
+     * 
+     * @param name The property to check
+     * @param annotation The annotation type
+     * @return True if the property carries the annotation
+     */
+    public boolean hasAnnotation(String name, Class<? extends Annotation> annotation);
+    
+    /**
+     * Call to get all the properties that carry an annotation
+     * (see {@link #hasAnnotation(String, Class)}).
+     * 
+     * @param annotation The annotation type
+     * @return The names of the properties in index order
+     */
+    public List<String> getPropertiesWithAnnotation(Class<? extends Annotation> annotation);
+    
     /**
      * Call to get a specific read annotation on the properties reader.
      * 
@@ -193,5 +350,85 @@ public interface BeanDefinition {
      * @throws IllegalArgumentException If the property does not exist, has no accessor or fails
      */
     public void write(Object obj, String name, Object val);
+    
+    /**
+     * Reads the value of a int property without boxing it
+     * 
+     * @param obj The object to read from
+     * @param name The name of the property to read
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property does not exist, is not a int, has no accessor or fails
+     */
+    public int readInt(Object obj, String name);
+    
+    /**
+     * Writes the value of a int property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param name The name of the property to write
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property does not exist, is not a int, has no mutator or fails
+     */
+    public void writeInt(Object obj, String name, int val);
+    
+    /**
+     * Reads the value of a long property without boxing it
+     * 
+     * @param obj The object to read from
+     * @param name The name of the property to read
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property does not exist, is not a long, has no accessor or fails
+     */
+    public long readLong(Object obj, String name);
+    
+    /**
+     * Writes the value of a long property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param name The name of the property to write
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property does not exist, is not a long, has no mutator or fails
+     */
+    public void writeLong(Object obj, String name, long val);
+    
+    /**
+     * Reads the value of a double property without boxing it
+     * 
+     * @param obj The object to read from
+     * @param name The name of the property to read
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property does not exist, is not a double, has no accessor or fails
+     */
+    public double readDouble(Object obj, String name);
+    
+    /**
+     * Writes the value of a double property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param name The name of the property to write
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property does not exist, is not a double, has no mutator or fails
+     */
+    public void writeDouble(Object obj, String name, double val);
+    
+    /**
+     * Reads the value of a boolean property without boxing it
+     * 
+     * @param obj The object to read from
+     * @param name The name of the property to read
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property does not exist, is not a boolean, has no accessor or fails
+     */
+    public boolean readBoolean(Object obj, String name);
+    
+    /**
+     * Writes the value of a boolean property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param name The name of the property to write
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property does not exist, is not a boolean, has no mutator or fails
+     */
+    public void writeBoolean(Object obj, String name, boolean val);
 
 }
\ No newline at end of file
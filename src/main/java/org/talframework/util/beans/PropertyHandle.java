@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+/**
+ * This interface represents a single, resolved property of
+ * a {@link BeanDefinition}. A handle is obtained once from
+ * the definition and then used to read and write the property
+ * without the definition having to look the property up by
+ * name each time. This makes them ideal to hold onto inside
+ * long lived objects such as mappers and binders.
+ * 
+ * <p>Each handle has an index that is its slot within the
+ * definition it came from, which is its position in the
+ * alphabetical order of the properties of the bean. Handles
+ * are only valid against beans of the definition they were
+ * obtained from.</p>
+ *
+ * @author Tom Spencer
+ */
+public interface PropertyHandle {
+
+    /**
+     * @return The name of the property
+     */
+    public String getName();
+    
+    /**
+     * @return The index (slot) of the property within its definition
+     */
+    public int getIndex();
+    
+    /**
+     * @return The type of the property
+     */
+    public Class<?> getType();
+    
+    /**
+     * @return True if the property can be read
+     */
+    public boolean canRead();
+    
+    /**
+     * @return True if the property can be written to
+     */
+    public boolean canWrite();
+    
+    /**
+     * Indicates if the primitive read and write methods of the
+     * handle access the property without boxing the value. If
+     * not they are no cheaper than {@link #read(Object)} and
+     * {@link #write(Object, Object)}, which should be used to
+     * copy the value instead.
+     * 
+     * @return True if the primitive methods do not box the value
+     */
+    public boolean hasPrimitiveAccess();
+    
+    /**
+     * Reads the property value
+     * 
+     * @param obj The object to read from
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property has no accessor or fails
+     */
+    public Object read(Object obj);
+    
+    /**
+     * Writes the property value
+     * 
+     * @param obj The object to write to
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property has no mutator or fails
+     */
+    public void write(Object obj, Object val);
+    
+    /**
+     * Reads the value of a int property without boxing it
+     * 
+     * @param obj The object to read from
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property is not a int, has no accessor or fails
+     */
+    public int readInt(Object obj);
+    
+    /**
+     * Writes the value of a int property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property is not a int, has no mutator or fails
+     */
+    public void writeInt(Object obj, int val);
+    
+    /**
+     * Reads the value of a long property without boxing it
+     * 
+     * @param obj The object to read from
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property is not a long, has no accessor or fails
+     */
+    public long readLong(Object obj);
+    
+    /**
+     * Writes the value of a long property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property is not a long, has no mutator or fails
+     */
+    public void writeLong(Object obj, long val);
+    
+    /**
+     * Reads the value of a double property without boxing it
+     * 
+     * @param obj The object to read from
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property is not a double, has no accessor or fails
+     */
+    public double readDouble(Object obj);
+    
+    /**
+     * Writes the value of a double property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property is not a double, has no mutator or fails
+     */
+    public void writeDouble(Object obj, double val);
+    
+    /**
+     * Reads the value of a boolean property without boxing it
+     * 
+     * @param obj The object to read from
+     * @return The value of the property
+     * @throws IllegalArgumentException If the property is not a boolean, has no accessor or fails
+     */
+    public boolean readBoolean(Object obj);
+    
+    /**
+     * Writes the value of a boolean property without boxing it
+     * 
+     * @param obj The object to write to
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property is not a boolean, has no mutator or fails
+     */
+    public void writeBoolean(Object obj, boolean val);
+}
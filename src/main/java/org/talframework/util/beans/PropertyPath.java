@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+/**
+ * This interface represents a compiled path through nested
+ * properties of a bean, such as "address.lines[2].postcode".
+ * Each part of the path is a property name, optionally 
+ * followed by one or more indexes into a list or array (i.e.
+ * [2]) or keys into a map (i.e. [key]).
+ * 
+ * <p>A path is obtained from the {@link BeanDefinition} of
+ * the root bean (see {@link BeanDefinition#getPropertyPath(String)})
+ * which parses the expression once and caches it, so reading
+ * and writing through the path requires no further parsing
+ * or lookup of definitions.</p>
+ *
+ * @author Tom Spencer
+ */
+public interface PropertyPath {
+
+    /**
+     * @return The expression of the path
+     */
+    public String getExpression();
+    
+    /**
+     * @return The type of the root bean of the path
+     */
+    public Class<?> getRootType();
+    
+    /**
+     * @return The type at the end of the path (Object if it cannot be determined)
+     */
+    public Class<?> getType();
+    
+    /**
+     * Reads the value at the end of the path. If any 
+     * object along the path is null then null is returned.
+     * 
+     * @param root The root bean
+     * @return The value (or null)
+     */
+    public Object read(Object root);
+    
+    /**
+     * Writes the value at the end of the path. All the 
+     * objects along the path must exist.
+     * 
+     * @param root The root bean
+     * @param val The value to write
+     * @throws IllegalArgumentException If an object along the path is null
+     */
+    public void write(Object root, Object val);
+    
+    /**
+     * Writes the value at the end of the path optionally 
+     * creating any objects along the path that are null. 
+     * Beans are created with their {@link BeanDefinition}
+     * and Lists, Sets and Maps as their default implementation.
+     * 
+     * @param root The root bean
+     * @param val The value to write
+     * @param autoCreate True if objects along the path that are null should be created
+     * @throws IllegalArgumentException If an object along the path is null and cannot be created
+     */
+    public void write(Object root, Object val, boolean autoCreate);
+}
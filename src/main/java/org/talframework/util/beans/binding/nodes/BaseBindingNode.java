@@ -23,10 +23,7 @@
 package org.talframework.util.beans.binding.nodes;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -149,37 +146,7 @@ public abstract class BaseBindingNode implements BindingNode {
     protected Class<?> getMemberType(BeanDefinition definition, String propName) {
         Class<?> propertyType = definition.getPropertyType(propName);
         
-        Class<?> ret = null;
-        if( propertyType.isArray() ) {
-            return propertyType.getComponentType();
-        }
-        
-        else if( Collection.class.isAssignableFrom(propertyType) ) {
-            Type type = definition.getPropertyGenericType(propName);
-            if( type instanceof ParameterizedType ) {
-                ParameterizedType parameterizedType = (ParameterizedType)type;
-            
-                if( parameterizedType.getActualTypeArguments() != null &&
-                        parameterizedType.getActualTypeArguments().length == 1 ) {
-                    Type memberType = parameterizedType.getActualTypeArguments()[0];
-                    if( memberType instanceof Class<?> ) ret = (Class<?>)memberType;
-                }
-            }
-        }
-        
-        else if( Map.class.isAssignableFrom(propertyType) ) {
-            Type type = definition.getPropertyGenericType(propName);
-            if( type instanceof ParameterizedType ) {
-                ParameterizedType parameterizedType = (ParameterizedType)type;
-            
-                if( parameterizedType.getActualTypeArguments() != null &&
-                        parameterizedType.getActualTypeArguments().length == 2 ) {
-                    Type memberType = parameterizedType.getActualTypeArguments()[1];
-                    if( memberType instanceof Class<?> ) ret = (Class<?>)memberType;
-                }
-            }
-        }
-        
-        return ret;        
+        if( Map.class.isAssignableFrom(propertyType) ) return definition.getPropertyValueType(propName);
+        else return definition.getPropertyElementType(propName);
     }
 }
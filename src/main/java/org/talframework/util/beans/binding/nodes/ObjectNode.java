@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.PropertyHandle;
 import org.talframework.util.beans.binding.BindingErrorType;
 import org.talframework.util.beans.binding.BindingRequest;
 import org.talframework.util.beans.binding.StandardBindingResult;
@@ -72,17 +73,18 @@ public class ObjectNode extends BaseBindingNode {
         
         // a. Apply properties
         for( String prop : values.keySet() ) {
-            if( def.hasProperty(prop) && def.canWrite(prop) ) {
+            PropertyHandle handle = def.getPropertyHandle(prop);
+            if( handle != null && handle.canWrite() ) {
                 Object val = values.get(prop);
-                Class<?> expected = def.getPropertyType(prop);
-                Object current = def.canRead(prop) ? def.read(target, prop) : null;
+                Class<?> expected = handle.getType();
+                Object current = handle.canRead() ? handle.read(target) : null;
                 
                 if( expected.isInstance(val) ) {
-                    def.write(target, prop, val);
+                    handle.write(target, val);
                 }
                 else if( val instanceof String ) {
                     val = getRealValue(request, result, target, prop, expected, current, val.toString());
-                    def.write(target, prop, val);
+                    handle.write(target, val);
                 }
                 else if( val instanceof String[] ) {
                     String[] arr = (String[])val;
@@ -92,7 +94,7 @@ public class ObjectNode extends BaseBindingNode {
                         for( int i = 0 ; i < arr.length ; i++ ) {
                             Array.set(newArray, i, getRealValue(request, result, target, prop, expected.getComponentType(), null, arr[i]));
                         }
-                        def.write(target, prop, newArray);
+                        handle.write(target, newArray);
                     }
                     else if( Collection.class.isAssignableFrom(expected) ) {
                         Class<?> memberType = getMemberType(def, prop);
@@ -100,7 +102,7 @@ public class ObjectNode extends BaseBindingNode {
                         for( int i = 0 ; i < arr.length ; i++ ) {
                             collection.add(getRealValue(request, result, target, prop, memberType, null, arr[i]));
                         }
-                        def.write(target, prop, collection);
+                        handle.write(target, collection);
                     }
                     else {
                         result.addError(target, prop, getFullPropertyPath(prop), val, BindingErrorType.INVALID_ARRAY.toString());
@@ -116,14 +118,15 @@ public class ObjectNode extends BaseBindingNode {
         if( childNodes == null ) return;
         for( String nodeName : childNodes.keySet() ) {
             BindingNode node = childNodes.get(nodeName);
-            if( def.hasProperty(nodeName) && def.canRead(nodeName) ) {
-                Object current = def.read(target, nodeName);
+            PropertyHandle handle = def.getPropertyHandle(nodeName);
+            if( handle != null && handle.canRead() ) {
+                Object current = handle.read(target);
                 
                 // FUTURE: I don't like handling like this, really should be consistent
                 if( node instanceof ObjectNode ) {
-                    if( current == null && def.canWrite(nodeName) ) {
-                        current = request.getObjectCreator().createObject(target, def.getPropertyType(node.getNodeName()), node.getNodeName(), values);
-                        def.write(target, nodeName, current);
+                    if( current == null && handle.canWrite() ) {
+                        current = request.getObjectCreator().createObject(target, handle.getType(), node.getNodeName(), values);
+                        handle.write(target, current);
                     }
                     
                     if( current != null ) {
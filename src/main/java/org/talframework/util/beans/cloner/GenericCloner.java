@@ -23,8 +23,10 @@
 package org.talframework.util.beans.cloner;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.PropertyHandle;
 import org.talframework.util.beans.definition.BeanDefinitionsSingleton;
 
 /**
@@ -32,7 +34,11 @@ import org.talframework.util.beans.definition.BeanDefinitionsSingleton;
  * using a {@link BeanDefinition}. This is very simple
  * and simply maps every balanced property of the class
  * into itself. Thus, any properties that are read-only, 
- * or set only, are not mapped over.
+ * or set only, are not mapped over. The exception is when
+ * the bean has a constructor taking its properties (see
+ * {@link BeanDefinition#getConstructorProperties()}), in which
+ * case the clone is created passing those properties to it so
+ * immutable beans can be cloned.
  * 
  * TODO: If the object support cloneable, use that first!
  *
@@ -46,7 +52,7 @@ public class GenericCloner implements Cloner {
     @SuppressWarnings("unchecked")
     public <T> T shallowClone(T object) {
         BeanDefinition definition = BeanDefinitionsSingleton.getInstance().getDefinition(object.getClass());
-        T dest = (T)definition.newInstance();
+        T dest = (T)newInstance(definition, object);
         return internalShallowClone(definition, object, dest);
     }
     
@@ -64,7 +70,7 @@ public class GenericCloner implements Cloner {
     @SuppressWarnings("unchecked")
     public <T> T deepClone(T object) {
         BeanDefinition definition = BeanDefinitionsSingleton.getInstance().getDefinition(object.getClass());
-        T dest = (T)definition.newInstance();
+        T dest = (T)newInstance(definition, object);
         return internalDeepClone(definition, object, dest);
     };
     
@@ -76,6 +82,24 @@ public class GenericCloner implements Cloner {
         return internalDeepClone(definition, object, clone);
     };
 
+    /**
+     * Internal helper to create the new instance to clone into,
+     * passing the values of the properties to its constructor if
+     * it has one that takes them.
+     * 
+     * @param definition The bean definition to use
+     * @param source The source object
+     * @return The new instance
+     */
+    protected Object newInstance(BeanDefinition definition, Object source) {
+        List<String> constructorProps = definition.getConstructorProperties();
+        if( constructorProps.isEmpty() ) return definition.newInstance();
+        
+        Object[] values = new Object[definition.getPropertyHandles().size()];
+        definition.readAll(source, values);
+        return definition.newInstance(values);
+    }
+    
     /**
      * Internal method that does the actual work of a shallow clone.
      * 
@@ -87,9 +111,17 @@ public class GenericCloner implements Cloner {
      */
     protected <T> T internalShallowClone(BeanDefinition definition, T source, T dest) {
         // Iterate balanced properties
-        Collection<String> props = definition.getBalancedProperties();
-        for( String prop : props ) {
-            definition.write(dest, prop, definition.read(source, prop));
+        for( PropertyHandle handle : definition.getPropertyHandles() ) {
+            if( !handle.canRead() || !handle.canWrite() ) continue;
+            
+            // Primitive methods only avoid boxing if the accessor supports it
+            Class<?> type = handle.getType();
+            if( !handle.hasPrimitiveAccess() ) handle.write(dest, handle.read(source));
+            else if( type == int.class ) handle.writeInt(dest, handle.readInt(source));
+            else if( type == long.class ) handle.writeLong(dest, handle.readLong(source));
+            else if( type == double.class ) handle.writeDouble(dest, handle.readDouble(source));
+            else if( type == boolean.class ) handle.writeBoolean(dest, handle.readBoolean(source));
+            else handle.write(dest, handle.read(source));
         }
         
         return dest;
@@ -22,9 +22,15 @@
  */
 package org.talframework.util.beans.cloner;
 
-import java.util.Collection;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.PropertyHandle;
 
 
 /**
@@ -42,25 +48,141 @@ import org.talframework.util.beans.BeanDefinition;
  * use if if required shallow cloning and was originally
  * created to support merging of a bean received via a
  * web service into the servers copy of that bean.</p>
+ * 
+ * <p>The pairs of properties and their 'Set' properties are
+ * resolved once per bean definition and held against the
+ * class weakly (and themselves softly as they refer back to
+ * the class) so they do not keep the class loaded. Properties
+ * are only read from the source if they have been set, which
+ * includes those passed to the constructor of a new clone.</p>
  *
  * @author Tom Spencer
  */
 public class GenericMerger extends GenericCloner {
+    
+    /** Holds the properties to merge against the type of bean */
+    private final Map<Class<?>, SoftReference<MergedProperties>> mergedProperties = Collections.synchronizedMap(new WeakHashMap<Class<?>, SoftReference<MergedProperties>>());
+    
+    /**
+     * Overridden so that only the properties that have been set
+     * are read from the source and passed to the constructor,
+     * any other constructor property is passed as null.
+     */
+    @Override
+    protected Object newInstance(BeanDefinition definition, Object source) {
+        if( definition.getConstructorProperties().isEmpty() ) return definition.newInstance();
+        
+        MergedProperties merged = getMergedProperties(definition);
+        PropertyHandle[] arguments = merged.arguments;
+        PropertyHandle[] isSetArguments = merged.isSetArguments;
+        int[] indexes = merged.argumentIndexes;
+        
+        Object[] values = new Object[definition.getPropertyHandles().size()];
+        for( int i = 0 ; i < arguments.length ; i++ ) {
+            if( isSetArguments[i].readBoolean(source) ) values[indexes[i]] = arguments[i].read(source);
+        }
+        return definition.newInstance(values);
+    }
 
     protected <T> T internalShallowClone(BeanDefinition definition, T source, T dest) {
-        Collection<String> props = definition.getBalancedProperties();
-        for( String prop : props ) {
-            String isSetProp = prop + "Set";
-            if( definition.hasProperty(isSetProp, boolean.class) ) {
-                boolean isSet = definition.read(source, isSetProp, Boolean.class);
-                if( isSet ) definition.write(dest, prop, definition.read(source, prop));
-            }
+        MergedProperties merged = getMergedProperties(definition);
+        PropertyHandle[] properties = merged.properties;
+        PropertyHandle[] isSetProperties = merged.isSetProperties;
+        
+        for( int i = 0 ; i < properties.length ; i++ ) {
+            if( isSetProperties[i].readBoolean(source) ) properties[i].write(dest, properties[i].read(source));
         }
         
         return dest;
     }
     
+    /**
+     * Internal helper to get the properties to merge for the
+     * definition, resolving them the first time the definition
+     * is used (or if it has been replaced).
+     * 
+     * @param definition The bean definition
+     * @return The properties to merge
+     */
+    private MergedProperties getMergedProperties(BeanDefinition definition) {
+        SoftReference<MergedProperties> ref = mergedProperties.get(definition.getType());
+        MergedProperties ret = ref != null ? ref.get() : null;
+        if( ret == null || ret.definition != definition ) {
+            // Any race just resolves the same properties again
+            ret = new MergedProperties(definition);
+            mergedProperties.put(definition.getType(), new SoftReference<MergedProperties>(ret));
+        }
+        return ret;
+    }
+    
     protected <T> T internalDeepClone(BeanDefinition definition, T source, T dest) {
         throw new UnsupportedOperationException("Deep copy from merger not yet supported");
     }
+    
+    /**
+     * Internal helper to hold the balanced properties of a bean
+     * that have a readable 'boolean is{Name}Set()' property, 
+     * along with the handle of that property, and likewise the
+     * properties passed to its constructor.
+     *
+     * @author Tom Spencer
+     */
+    private static final class MergedProperties {
+        /** The definition the properties were resolved from */
+        private final BeanDefinition definition;
+        /** The properties to merge */
+        private final PropertyHandle[] properties;
+        /** The 'Set' property of each property to merge */
+        private final PropertyHandle[] isSetProperties;
+        /** The constructor properties to pass if set */
+        private final PropertyHandle[] arguments;
+        /** The 'Set' property of each constructor property */
+        private final PropertyHandle[] isSetArguments;
+        /** The index of each constructor property in the definition */
+        private final int[] argumentIndexes;
+        
+        public MergedProperties(BeanDefinition definition) {
+            List<PropertyHandle> props = new ArrayList<PropertyHandle>();
+            List<PropertyHandle> isSetProps = new ArrayList<PropertyHandle>();
+            for( PropertyHandle handle : definition.getPropertyHandles() ) {
+                if( !handle.canRead() || !handle.canWrite() ) continue;
+                
+                PropertyHandle isSet = getIsSet(definition, handle);
+                if( isSet != null ) {
+                    props.add(handle);
+                    isSetProps.add(isSet);
+                }
+            }
+            
+            List<PropertyHandle> handles = definition.getPropertyHandles();
+            List<PropertyHandle> args = new ArrayList<PropertyHandle>();
+            List<PropertyHandle> isSetArgs = new ArrayList<PropertyHandle>();
+            List<Integer> argIndexes = new ArrayList<Integer>();
+            for( String name : definition.getConstructorProperties() ) {
+                PropertyHandle handle = definition.getPropertyHandle(name);
+                PropertyHandle isSet = handle != null && handle.canRead() ? getIsSet(definition, handle) : null;
+                if( isSet != null ) {
+                    args.add(handle);
+                    isSetArgs.add(isSet);
+                    argIndexes.add(handles.indexOf(handle));
+                }
+            }
+            
+            this.definition = definition;
+            this.properties = props.toArray(new PropertyHandle[props.size()]);
+            this.isSetProperties = isSetProps.toArray(new PropertyHandle[isSetProps.size()]);
+            this.arguments = args.toArray(new PropertyHandle[args.size()]);
+            this.isSetArguments = isSetArgs.toArray(new PropertyHandle[isSetArgs.size()]);
+            this.argumentIndexes = new int[argIndexes.size()];
+            for( int i = 0 ; i < argumentIndexes.length ; i++ ) argumentIndexes[i] = argIndexes.get(i);
+        }
+        
+        /**
+         * @return The readable 'Set' property of the property or null if there isn't one
+         */
+        private static PropertyHandle getIsSet(BeanDefinition definition, PropertyHandle handle) {
+            PropertyHandle isSet = definition.getPropertyHandle(handle.getName() + "Set");
+            return isSet != null && isSet.getType() == boolean.class && isSet.canRead() ? isSet : null;
+        }
+    }
 }
@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.talframework.tal.aspects.annotations.TraceWarn;
+
+/**
+ * This class generates the {@link PropertyAccessor}s for the
+ * introspected properties of a bean at runtime. A single class 
+ * is generated for the bean holding an accessor for each of its
+ * properties that calls the getter and setter directly, so the
+ * JIT can inline the read or write as if the getter or setter 
+ * was called by hand. For int, long, double and boolean 
+ * properties the primitive get and set methods are generated
+ * as well so the values are not boxed.
+ * 
+ * <p>The class is generated the first time any property of the
+ * bean that is not shared with the superclass is resolved. It
+ * is compiled in memory with the system Java compiler, see 
+ * {@link ClassCompiler}. Only properties of public classes with
+ * public getters and setters that do not throw checked 
+ * exceptions are generated. The remaining properties, or all of
+ * them if the class cannot be generated (i.e. not running on a
+ * JDK), are read and written reflectively instead.</p>
+ *
+ * @author Tom Spencer
+ */
+final class AccessorGenerator {
+    /** The package the accessors are generated in */
+    private static final String PACKAGE = "org.talframework.util.beans.definition.generated";
+    /** The number of classes generated, used to name them */
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    
+    /** The bean class */
+    private final Class<?> type;
+    /** The definition of the superclass whose accessors are shared (null once generated) */
+    private BeanDefinitionImpl inherited;
+    /** The properties to generate accessors for (null once generated) */
+    private List<DeferredPropertyAccessor> properties = new ArrayList<DeferredPropertyAccessor>();
+    /** The generated accessors by property name once generated */
+    private Map<String, PropertyAccessor> accessors;
+    
+    /**
+     * Constructs the generator
+     * 
+     * @param type The bean class
+     * @param inherited The definition of the superclass (or null)
+     */
+    public AccessorGenerator(Class<?> type, BeanDefinitionImpl inherited) {
+        this.type = type;
+        this.inherited = inherited;
+    }
+    
+    /**
+     * Adds a property to generate the accessor for. This is
+     * only called while the definition is being constructed.
+     * 
+     * @param property The property
+     */
+    public synchronized void add(DeferredPropertyAccessor property) {
+        properties.add(property);
+    }
+    
+    /**
+     * Gets the generated accessor for the property, generating
+     * the accessors for the whole bean the first time.
+     * 
+     * @param property The property
+     * @return The generated accessor or null if it could not be generated
+     */
+    public synchronized PropertyAccessor getAccessor(DeferredPropertyAccessor property) {
+        if( accessors == null ) {
+            accessors = generate();
+            properties = null;
+            inherited = null;
+        }
+        return accessors.get(property.getName());
+    }
+    
+    /**
+     * Generates, compiles and loads the accessors 
+     * 
+     * @return The accessors by property name
+     */
+    private Map<String, PropertyAccessor> generate() {
+        if( !isPublic(type) ) return unsupported("bean must be a public class");
+        
+        List<DeferredPropertyAccessor> generated = new ArrayList<DeferredPropertyAccessor>();
+        for( DeferredPropertyAccessor property : properties ) {
+            if( inherited != null && inherited.getInheritedAccessor(property) != null ) continue;
+            if( canGenerate(property) ) generated.add(property);
+        }
+        if( generated.isEmpty() ) return Collections.emptyMap();
+        
+        String simpleName = "Accessors" + COUNT.incrementAndGet() + "_" + type.getSimpleName();
+        String name = PACKAGE + "." + simpleName;
+        
+        int size = generated.size();
+        String[] names = new String[size];
+        Class<?>[] types = new Class<?>[size];
+        Method[] readers = new Method[size];
+        Method[] writers = new Method[size];
+        for( int i = 0 ; i < size ; i++ ) {
+            DeferredPropertyAccessor property = generated.get(i);
+            names[i] = property.getName();
+            types[i] = property.getType();
+            readers[i] = property.getReadMethod();
+            writers[i] = property.getWriteMethod();
+        }
+        
+        try {
+            Class<?> accessorsClass = new ClassCompiler(type).compile(name, generateSource(simpleName, generated));
+            Method create = accessorsClass.getMethod("create", String[].class, Class[].class, Method[].class, Method[].class);
+            PropertyAccessor[] created = (PropertyAccessor[])create.invoke(null, names, types, readers, writers);
+            
+            Map<String, PropertyAccessor> ret = new HashMap<String, PropertyAccessor>();
+            for( PropertyAccessor accessor : created ) ret.put(accessor.getName(), accessor);
+            return ret;
+        }
+        catch( Exception e ) {
+            return unsupported(e.toString());
+        }
+        catch( LinkageError e ) {
+            return unsupported(e.toString());
+        }
+    }
+    
+    /**
+     * Generates the source of the accessors
+     * 
+     * @param simpleName The simple name of the class
+     * @param generated The properties to generate accessors for
+     * @return The source
+     */
+    private String generateSource(String simpleName, List<DeferredPropertyAccessor> generated) {
+        String bean = type.getCanonicalName();
+        String base = GeneratedPropertyAccessor.class.getName();
+        
+        StringBuilder ret = new StringBuilder();
+        ret.append("package ").append(PACKAGE).append(";\n\n");
+        ret.append("public final class ").append(simpleName).append(" {\n");
+        ret.append("    public static ").append(PropertyAccessor.class.getName()).append("[] create(String[] names, Class<?>[] types, java.lang.reflect.Method[] readers, java.lang.reflect.Method[] writers) {\n");
+        ret.append("        return new ").append(PropertyAccessor.class.getName()).append("[]{\n");
+        for( int i = 0 ; i < generated.size() ; i++ ) {
+            ret.append("            new P").append(i).append("(names[").append(i).append("], types[").append(i).append("], readers[").append(i).append("], writers[").append(i).append("]),\n");
+        }
+        ret.append("        };\n");
+        ret.append("    }\n");
+        
+        for( int i = 0 ; i < generated.size() ; i++ ) {
+            DeferredPropertyAccessor property = generated.get(i);
+            Method reader = property.getReadMethod();
+            Method writer = property.getWriteMethod();
+            
+            ret.append("\n    private static final class P").append(i).append(" extends ").append(base).append(" {\n");
+            ret.append("        P").append(i).append("(String name, Class<?> type, java.lang.reflect.Method reader, java.lang.reflect.Method writer) {\n");
+            ret.append("            super(name, type, reader, writer);\n");
+            ret.append("        }\n");
+            
+            ret.append("        public Object get(Object bean) {\n");
+            if( reader != null ) ret.append("            return ((").append(bean).append(")bean).").append(reader.getName()).append("();\n");
+            else ret.append("            throw cannotRead();\n");
+            ret.append("        }\n");
+            
+            ret.append("        public void set(Object bean, Object val) {\n");
+            if( writer != null ) {
+                Class<?> paramType = writer.getParameterTypes()[0];
+                String call = "((" + bean + ")bean)." + writer.getName();
+                if( paramType.isPrimitive() ) {
+                    String wrapper = wrapperOf(paramType).getName();
+                    ret.append("            if( !(val instanceof ").append(wrapper).append(") ) throw cannotWrite(val);\n");
+                    ret.append("            ").append(call).append("(((").append(wrapper).append(")val).").append(paramType.getName()).append("Value());\n");
+                }
+                else {
+                    String cast = paramType.getCanonicalName();
+                    ret.append("            if( val != null && !(val instanceof ").append(cast).append(") ) throw cannotWrite(val);\n");
+                    ret.append("            ").append(call).append("((").append(cast).append(")val);\n");
+                }
+            }
+            else {
+                ret.append("            throw cannotWrite(val);\n");
+            }
+            ret.append("        }\n");
+            
+            String primitive = primitiveName(property.getType());
+            if( primitive != null ) {
+                String suffix = Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1);
+                if( reader != null && reader.getReturnType() == property.getType() ) {
+                    ret.append("        public ").append(primitive).append(" get").append(suffix).append("(Object bean) {\n");
+                    ret.append("            return ((").append(bean).append(")bean).").append(reader.getName()).append("();\n");
+                    ret.append("        }\n");
+                }
+                if( writer != null && writer.getParameterTypes()[0] == property.getType() ) {
+                    ret.append("        public void set").append(suffix).append("(Object bean, ").append(primitive).append(" val) {\n");
+                    ret.append("            ((").append(bean).append(")bean).").append(writer.getName()).append("(val);\n");
+                    ret.append("        }\n");
+                }
+                ret.append("        public boolean hasPrimitiveAccess() {\n");
+                ret.append("            return true;\n");
+                ret.append("        }\n");
+            }
+            ret.append("    }\n");
+        }
+        
+        ret.append("}\n");
+        return ret.toString();
+    }
+    
+    /**
+     * @return True if the accessor of the property can be generated
+     */
+    private static boolean canGenerate(DeferredPropertyAccessor property) {
+        Method reader = property.getReadMethod();
+        Method writer = property.getWriteMethod();
+        if( reader == null && writer == null ) return false;
+        if( reader != null && !canCall(reader) ) return false;
+        if( writer != null && (!canCall(writer) || writer.getParameterTypes().length != 1 || !isPublic(writer.getParameterTypes()[0])) ) return false;
+        return true;
+    }
+    
+    /**
+     * @return True if the method is public and can be called without handling checked exceptions
+     */
+    private static boolean canCall(Method method) {
+        if( !Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers()) ) return false;
+        for( Class<?> exception : method.getExceptionTypes() ) {
+            if( !RuntimeException.class.isAssignableFrom(exception) && !Error.class.isAssignableFrom(exception) ) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @return True if the class is public and can be named from the generated class
+     */
+    private static boolean isPublic(Class<?> type) {
+        Class<?> current = type;
+        while( current.isArray() ) current = current.getComponentType();
+        if( current.isPrimitive() ) return true;
+        
+        Class<?> named = current;
+        while( current != null ) {
+            if( !Modifier.isPublic(current.getModifiers()) ) return false;
+            if( current.isMemberClass() && !Modifier.isStatic(current.getModifiers()) ) return false;
+            current = current.getEnclosingClass();
+        }
+        return named.getCanonicalName() != null;
+    }
+    
+    /**
+     * @return The name of the type if it has primitive get and set methods, otherwise null
+     */
+    private static String primitiveName(Class<?> type) {
+        if( type == int.class || type == long.class || type == double.class || type == boolean.class ) return type.getName();
+        return null;
+    }
+    
+    /**
+     * @return The wrapper class of the primitive type
+     */
+    private static Class<?> wrapperOf(Class<?> primitive) {
+        if( primitive == int.class ) return Integer.class;
+        else if( primitive == long.class ) return Long.class;
+        else if( primitive == double.class ) return Double.class;
+        else if( primitive == boolean.class ) return Boolean.class;
+        else if( primitive == float.class ) return Float.class;
+        else if( primitive == short.class ) return Short.class;
+        else if( primitive == byte.class ) return Byte.class;
+        else if( primitive == char.class ) return Character.class;
+        else throw new IllegalArgumentException("Not a primitive type: " + primitive);
+    }
+    
+    /**
+     * Internal helper to report why the accessors cannot be generated
+     * 
+     * @return No generated accessors
+     */
+    private Map<String, PropertyAccessor> unsupported(String reason) {
+        cannotGenerate(type, reason);
+        return Collections.emptyMap();
+    }
+    
+    /**
+     * Method is present to call so the aspect loggers can log it.
+     */
+    @TraceWarn
+    private void cannotGenerate(Class<?> type, String reason) {
+    }
+}
@@ -25,17 +25,28 @@ package org.talframework.util.beans.definition;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.talframework.util.beans.BeanDefinition;
-import org.talframework.util.beans.InterfaceAdaptor;
+import org.talframework.util.beans.PropertyHandle;
+import org.talframework.util.beans.PropertyPath;
 
 /**
  * This class contains the methods accessing and mutating
@@ -43,15 +54,90 @@ import org.talframework.util.beans.InterfaceAdaptor;
  * be cached and then used to reflectively access a bean.
  * They are used within the beans utility by the mapper,
  * but can be used outside as well.
+ * 
+ * <p>The definition can also be constructed from a set of 
+ * {@link PropertyAccessor}s instead of introspecting the
+ * class. This is how the definitions generated for classes
+ * marked with {@link GenerateDefinition} are created.</p>
+ * 
+ * <p>When the definition of the superclass is given the
+ * accessors for the properties that are inherited unchanged
+ * from the superclass are shared with it, so only the 
+ * properties the class declares or overrides itself get new
+ * accessors.</p>
+ * 
+ * <p>Optionally the fields of the class can be treated as 
+ * properties as well, see {@link FieldAccess}.</p>
+ * 
+ * <p>The properties are held compactly in arrays by their
+ * index. Names are looked up through a small open addressing
+ * hash table of indexes and the balanced, read only and set
+ * only groups are held as arrays of indexes, so there are no
+ * map entries or copies of the names per definition.</p>
+ * 
+ * <p>Construction introspects the class and collects the
+ * names of the properties and whether they can be read and
+ * written. The accessor, generic types and annotations of 
+ * each property are resolved separately the first time they
+ * are needed, so that work is never done for properties that
+ * are not used. The introspection of the class itself is not
+ * deferred, so construction costs as much as introspecting
+ * the class always has. The properties and their groups are
+ * needed as soon as the definition is used, even just to list
+ * them, and only the JavaBeans {@link Introspector} applies
+ * all the rules for finding them, including explicit BeanInfo
+ * classes. Definitions that must avoid it altogether
+ * can be generated at compile time instead, see 
+ * {@link GenerateDefinition}.</p>
  *
  * @author Tom Spencer
  */
-public final class BeanDefinitionImpl implements BeanDefinition {
-
+public class BeanDefinitionImpl implements BeanDefinition {
+    
+    /** Group of a property that can be read and written */
+    private static final int BALANCED = 1;
+    /** Group of a property that can only be read */
+    private static final int READ_ONLY = 2;
+    /** Group of a property that can only be written */
+    private static final int SET_ONLY = 3;
+    
+    /** Orders the accessors alphabetically by property name */
+    private static final Comparator<PropertyAccessor> BY_NAME = new Comparator<PropertyAccessor>() {
+        public int compare(PropertyAccessor o1, PropertyAccessor o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+    
     /** The type this instance holds the definition for */
     private final Class<?> type;
-    /** Holds all the accessors for the properties in the bean */
-    private final Map<String, PropertyDefinition> properties;
+    /** Holds the names of all the properties by their index */
+    private final String[] names;
+    /** Holds the definitions of all the properties by their index */
+    private final PropertyDefinition[] definitions;
+    /** Holds the (index + 1) of each property in the slot for its name, 0 if slot is empty */
+    private final int[] slots;
+    /** Holds the indexes of all balanced properties */
+    private final int[] balancedIndexes;
+    /** Holds the indexes of all readonly properties */
+    private final int[] readOnlyIndexes;
+    /** Holds the indexes of all setonly properties */
+    private final int[] setOnlyIndexes;
+    
+    /** Holds the instantiator once it has been resolved */
+    private volatile Instantiator instantiator;
+    /** Holds the instantiator taking property values once resolved, {@link Instantiator#NONE} if there isn't one */
+    private volatile Instantiator constructorInstantiator;
+    /** Holds the resolver of generic types once created */
+    private volatile GenericTypeResolver resolver;
+    /** Holds the names of the properties carrying each annotation type asked about (created on first use) */
+    private volatile ConcurrentHashMap<Class<?>, List<String>> annotated;
+    /** Holds the most recently used compiled property paths against their expression (created on first use and when definitions are invalidated) */
+    private volatile PathCache paths;
+    
+    /** Holds all the property names */
+    private final List<String> properties;
+    /** Holds all the properties by their index */
+    private final List<PropertyHandle> handles;
     /** Holds all balanced property names */
     private final List<String> balancedProperties;
     /** Holds all readonly property names */
@@ -66,35 +152,241 @@ public final class BeanDefinitionImpl implements BeanDefinition {
      * @param type The bean class
      */
     public BeanDefinitionImpl(Class<?> type) {
+        this(type, introspect(type, null, false, false));
+    }
+    
+    /**
+     * Constructs a {@link BeanDefinitionImpl} for the given
+     * bean class sharing the accessors of any properties that
+     * are inherited unchanged from the superclass.
+     * 
+     * @param type The bean class
+     * @param superDefinition The definition of the superclass (or null)
+     */
+    public BeanDefinitionImpl(Class<?> type, BeanDefinition superDefinition) {
+        this(type, introspect(type, superDefinition, false, false));
+    }
+    
+    /**
+     * Constructs a {@link BeanDefinitionImpl} for the given
+     * bean class optionally treating the fields of the class
+     * as properties (see {@link FieldAccess}).
+     * 
+     * @param type The bean class
+     * @param superDefinition The definition of the superclass (or null)
+     * @param fieldAccess True if the fields should be properties as well
+     */
+    public BeanDefinitionImpl(Class<?> type, BeanDefinition superDefinition, boolean fieldAccess) {
+        this(type, introspect(type, superDefinition, fieldAccess, false));
+    }
+    
+    /**
+     * Constructs a {@link BeanDefinitionImpl} for the given
+     * bean class optionally treating the fields of the class
+     * as properties and optionally generating the accessors
+     * of the properties (see {@link AccessorGenerator}).
+     * 
+     * @param type The bean class
+     * @param superDefinition The definition of the superclass (or null)
+     * @param fieldAccess True if the fields should be properties as well
+     * @param generateAccessors True if accessors calling the getters and setters directly should be generated
+     */
+    public BeanDefinitionImpl(Class<?> type, BeanDefinition superDefinition, boolean fieldAccess, boolean generateAccessors) {
+        this(type, introspect(type, superDefinition, fieldAccess, generateAccessors));
+    }
+    
+    /**
+     * Constructs a {@link BeanDefinitionImpl} for the given
+     * bean class using the given accessors instead of
+     * introspecting the class.
+     * 
+     * @param type The bean class
+     * @param accessors The accessors for each property
+     */
+    public BeanDefinitionImpl(Class<?> type, PropertyAccessor... accessors) {
+        // Index of each property is its alphabetical position
+        accessors = accessors.clone();
+        Arrays.sort(accessors, BY_NAME);
+        
         this.type = type;
-        this.properties = new HashMap<String, PropertyDefinition>();
-        this.balancedProperties = new ArrayList<String>();
-        this.readOnlyProperties = new ArrayList<String>();
-        this.setOnlyProperties = new ArrayList<String>();
+        this.names = new String[accessors.length];
+        this.definitions = new PropertyDefinition[accessors.length];
+        
+        // Table is at least twice the size to keep the probes short
+        int tableSize = 2;
+        while( tableSize < accessors.length * 2 ) tableSize <<= 1;
+        this.slots = new int[tableSize];
+        
+        int[] groups = new int[accessors.length];
+        int balanced = 0;
+        int readOnly = 0;
+        int setOnly = 0;
+        for( int i = 0 ; i < accessors.length ; i++ ) {
+            PropertyAccessor accessor = accessors[i];
+            String name = accessor.getName();
+            if( indexOf(name) >= 0 ) throw new IllegalArgumentException("Property [" + name + "] is defined more than once for bean type: " + type);
+            
+            names[i] = name;
+            definitions[i] = new PropertyDefinition(type, i, accessor);
+            int slot = slot(name);
+            while( slots[slot] != 0 ) slot = (slot + 1) & (slots.length - 1);
+            slots[slot] = i + 1;
+            
+            // Work out which set of properties prop belongs to
+            if( accessor.canRead() ) {
+                if( !accessor.canWrite() ) { groups[i] = READ_ONLY; ++readOnly; }
+                else { groups[i] = BALANCED; ++balanced; }
+            }
+            else if( accessor.canWrite() ) {
+                groups[i] = SET_ONLY; ++setOnly;
+            }
+        }
+        
+        this.balancedIndexes = indexesOf(groups, BALANCED, balanced);
+        this.readOnlyIndexes = indexesOf(groups, READ_ONLY, readOnly);
+        this.setOnlyIndexes = indexesOf(groups, SET_ONLY, setOnly);
+        
+        this.properties = Collections.unmodifiableList(Arrays.asList(names));
+        this.handles = Collections.unmodifiableList(Arrays.<PropertyHandle>asList(definitions));
+        this.balancedProperties = new PropertyNames(names, balancedIndexes);
+        this.readOnlyProperties = new PropertyNames(names, readOnlyIndexes);
+        this.setOnlyProperties = new PropertyNames(names, setOnlyIndexes);
+    }
+    
+    /**
+     * Internal helper to get the accessor of a property in this
+     * definition if the given property of a subclass has the 
+     * same type, accessor and mutator (i.e. it is inherited).
+     * 
+     * @param prop The property of the subclass
+     * @return The accessor to share or null if the property is not inherited as is
+     */
+    PropertyAccessor getInheritedAccessor(PropertyAccessor prop) {
+        int index = indexOf(prop.getName());
+        if( index < 0 ) return null;
+        
+        PropertyAccessor ret = definitions[index].accessor();
+        if( ret.getType() != prop.getType() ) return null;
+        if( !sameMethod(ret.getReadMethod(), prop.getReadMethod()) ) return null;
+        if( !sameMethod(ret.getWriteMethod(), prop.getWriteMethod()) ) return null;
+        return ret;
+    }
+    
+    /**
+     * @return True if both methods are null or they are equal
+     */
+    private static boolean sameMethod(Method first, Method second) {
+        return first == null ? second == null : first.equals(second);
+    }
+    
+    /**
+     * Internal helper to extract the indexes of the
+     * properties in a given group.
+     * 
+     * @param groups The group of each property by index
+     * @param group The group required
+     * @param count The number of properties in the group
+     * @return The indexes in the group
+     */
+    private static int[] indexesOf(int[] groups, int group, int count) {
+        int[] ret = new int[count];
+        int n = 0;
+        for( int i = 0 ; i < groups.length ; i++ ) {
+            if( groups[i] == group ) ret[n++] = i;
+        }
+        return ret;
+    }
+    
+    /**
+     * Internal helper to get the initial slot for a name
+     * 
+     * @param name The name
+     * @return The slot
+     */
+    private int slot(String name) {
+        int h = name.hashCode();
+        h ^= (h >>> 16);
+        return h & (slots.length - 1);
+    }
+    
+    /**
+     * Internal helper to find the index of a property
+     * 
+     * @param name The name of the property
+     * @return The index or -1 if there is no such property
+     */
+    private int indexOf(String name) {
+        if( name == null ) return -1;
+        
+        int mask = slots.length - 1;
+        int slot = slot(name);
+        int index = slots[slot];
+        while( index != 0 ) {
+            if( name.equals(names[index - 1]) ) return index - 1;
+            slot = (slot + 1) & mask;
+            index = slots[slot];
+        }
+        return -1;
+    }
+    
+    /**
+     * Internal helper to introspect the class and create 
+     * the deferred accessor for each property.
+     * 
+     * @param type The bean class
+     * @param superDefinition The definition of the superclass (or null)
+     * @param fieldAccess True if the fields should be properties as well
+     * @param generateAccessors True if the accessors should be generated
+     * @return The accessors
+     */
+    private static PropertyAccessor[] introspect(Class<?> type, BeanDefinition superDefinition, boolean fieldAccess, boolean generateAccessors) {
+        BeanDefinitionImpl inherited = superDefinition instanceof BeanDefinitionImpl ? (BeanDefinitionImpl)superDefinition : null;
+        AccessorGenerator generator = generateAccessors ? new AccessorGenerator(type, inherited) : null;
+        List<PropertyAccessor> ret = new ArrayList<PropertyAccessor>();
         
-        // Get all properties
         try {
             PropertyDescriptor[] props = Introspector.getBeanInfo(type).getPropertyDescriptors();
             if( props != null ) {
                 for( PropertyDescriptor prop : props ) {
                     if( prop.getName().equals("class") ) continue;
-                    PropertyDefinition def = new PropertyDefinition(prop);
-                    properties.put(prop.getName(), def);
                     
-                    // Add prop to list of properties in correct set
-                    if( def.getAccessor() != null ) {
-                        if( def.getMutator() == null ) readOnlyProperties.add(prop.getName());
-                        else balancedProperties.add(prop.getName());
-                    }
-                    else if( def.getMutator() != null ) {
-                        setOnlyProperties.add(prop.getName());
-                    }
+                    ret.add(new DeferredPropertyAccessor(prop.getName(), prop.getPropertyType(), prop.getReadMethod(), prop.getWriteMethod(), inherited, generator));
                 }
             }
         }
         catch( Exception e ) {
             throw new IllegalArgumentException("Cannot create bean property definition for bean: " + type, e);
         }
+        
+        if( fieldAccess ) addFields(type, ret);
+        
+        return ret.toArray(new PropertyAccessor[ret.size()]);
+    }
+    
+    /**
+     * Internal helper to add an accessor for each non-private,
+     * non-static and non-transient field of the class that is
+     * not already a property. Fields in a subclass hide those
+     * of the same name in its superclasses.
+     * 
+     * @param type The bean class
+     * @param accessors The accessors to add to
+     */
+    private static void addFields(Class<?> type, List<PropertyAccessor> accessors) {
+        Set<String> names = new HashSet<String>();
+        for( PropertyAccessor accessor : accessors ) names.add(accessor.getName());
+        
+        Class<?> current = type;
+        while( current != null && current != Object.class ) {
+            for( Field field : current.getDeclaredFields() ) {
+                int modifiers = field.getModifiers();
+                if( Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) ) continue;
+                if( field.isSynthetic() || !names.add(field.getName()) ) continue;
+                
+                accessors.add(new FieldPropertyAccessor(field));
+            }
+            current = current.getSuperclass();
+        }
     }
     
     /**
@@ -108,30 +400,51 @@ public final class BeanDefinitionImpl implements BeanDefinition {
      * {@inheritDoc}
      */
     public Object newInstance() {
-        try {
-            if( type.isInterface() ) {
-                return type.cast(Proxy.newProxyInstance(
-                        Thread.currentThread().getContextClassLoader(), 
-                        new Class[]{type}, 
-                        new InterfaceAdaptor()));
-            }
-            else {
-                return type.newInstance();
-            }
+        Instantiator ret = instantiator;
+        if( ret == null ) {
+            // Any race just resolves the same instantiator again
+            ret = Instantiator.forType(type);
+            instantiator = ret;
         }
-        catch( RuntimeException e ) {
-            throw e;
-        }
-        catch( Exception e ) {
-            throw new RuntimeException("Cannot create instance of bean: " + type, e);
+        return ret.newInstance();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Object newInstance(Object[] values) {
+        Instantiator ret = getConstructorInstantiator();
+        return ret != Instantiator.NONE ? ret.newInstance(values) : newInstance();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> getConstructorProperties() {
+        return getConstructorInstantiator().getProperties();
+    }
+    
+    /**
+     * Internal helper to resolve the instantiator that
+     * takes the values of properties
+     * 
+     * @return The instantiator
+     */
+    private Instantiator getConstructorInstantiator() {
+        Instantiator ret = constructorInstantiator;
+        if( ret == null ) {
+            // Any race just resolves the same instantiator again
+            ret = Instantiator.forConstructor(type, this);
+            constructorInstantiator = ret;
         }
+        return ret;
     }
     
     /**
      * {@inheritDoc}
      */
     public Collection<String> getProperties() {
-        return properties.keySet();
+        return properties;
     }
     
     /**
@@ -155,27 +468,116 @@ public final class BeanDefinitionImpl implements BeanDefinition {
         return balancedProperties;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public int getPropertyIndex(String name) {
+        return indexOf(name);
+    }
+    
     /**
      * {@inheritDoc}
      */
     public boolean hasProperty(String name) {
-        return this.properties.containsKey(name);
+        return indexOf(name) >= 0;
     }
     
     /**
      * {@inheritDoc}
      */
     public boolean hasProperty(String name, Class<?> type) {
-        if( this.properties.containsKey(name) && type.isAssignableFrom(this.properties.get(name).getType()) ) return true;
-        return false;
+        int index = indexOf(name);
+        return index >= 0 && type.isAssignableFrom(definitions[index].getType());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public PropertyHandle getPropertyHandle(String name) {
+        int index = indexOf(name);
+        return index >= 0 ? definitions[index] : null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public PropertyPath getPropertyPath(String expression) {
+        if( expression == null ) throw new IllegalArgumentException("You must provide a property path");
+        
+        // Paths hold the definitions of the nested beans, so are discarded if any are invalidated
+        long version = BeanDefinitionsSingleton.getInstance().getVersion();
+        PathCache cache = paths;
+        if( cache == null || cache.version != version ) {
+            synchronized( this ) {
+                if( paths == null || paths.version != version ) paths = new PathCache(version);
+                cache = paths;
+            }
+        }
+        
+        PropertyPath ret = null;
+        synchronized( cache ) {
+            ret = cache.get(expression);
+        }
+        
+        if( ret == null ) {
+            ret = new CompiledPropertyPath(this, expression);
+            synchronized( cache ) {
+                PropertyPath existing = cache.get(expression);
+                if( existing != null ) ret = existing;
+                else cache.put(expression, ret);
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public List<PropertyHandle> getPropertyHandles() {
+        return handles;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void readAll(Object obj, Object[] into) {
+        checkValues(into);
+        for( int i = 0 ; i < definitions.length ; i++ ) {
+            PropertyAccessor accessor = definitions[i].accessor();
+            into[i] = accessor.canRead() ? accessor.get(obj) : null;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void writeAll(Object obj, Object[] from) {
+        checkValues(from);
+        for( int i = 0 ; i < definitions.length ; i++ ) {
+            PropertyAccessor accessor = definitions[i].accessor();
+            if( !accessor.canWrite() ) continue;
+            
+            Object val = from[i];
+            if( val != null || !definitions[i].type.isPrimitive() ) accessor.set(obj, val);
+        }
+    }
+    
+    /**
+     * Helper to ensure the array of values for the bulk read
+     * and write is large enough for all the properties
+     * 
+     * @param values The values array
+     * @throws IllegalArgumentException If it is not
+     */
+    protected void checkValues(Object[] values) {
+        if( values == null || values.length < definitions.length ) throw new IllegalArgumentException("The values array must hold all " + definitions.length + " properties of bean type: " + type);
     }
     
     /**
      * {@inheritDoc}
      */
     public Class<?> getPropertyType(String name) {
-        if( !hasProperty(name) ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
-        return properties.get(name).getType();
+        return getDefinition(name).getType();
     }
     
     /**
@@ -201,54 +603,140 @@ public final class BeanDefinitionImpl implements BeanDefinition {
      * {@inheritDoc}
      */
     public Type getPropertyGenericType(String name) {
-        if( canRead(name) ) return properties.get(name).getAccessor().getGenericReturnType();
-        else if( canWrite(name) ) return properties.get(name).getMutator().getGenericParameterTypes()[0];
-        else return null; // Wouldn't be here if there wasn't a reader or writer!
+        return getTypes(getDefinition(name)).genericType;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Class<?> getPropertyElementType(String name) {
+        return getTypes(getDefinition(name)).elementType;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Class<?> getPropertyKeyType(String name) {
+        return getTypes(getDefinition(name)).keyType;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Class<?> getPropertyValueType(String name) {
+        return getTypes(getDefinition(name)).valueType;
+    }
+    
+    /**
+     * Internal helper to get the generic types of a property,
+     * resolving them the first time they are needed.
+     * 
+     * @param def The property
+     * @return The generic types of the property
+     */
+    private PropertyTypes getTypes(PropertyDefinition def) {
+        PropertyTypes ret = def.types;
+        if( ret == null ) {
+            GenericTypeResolver typeResolver = resolver;
+            if( typeResolver == null ) {
+                typeResolver = new GenericTypeResolver(type);
+                resolver = typeResolver;
+            }
+            
+            // Any race just resolves the same types again
+            ret = new PropertyTypes(def, typeResolver);
+            def.types = ret;
+        }
+        return ret;
     }
     
     /**
      * {@inheritDoc}
      */
     public <T extends Annotation> T getReadAnnotation(String name, Class<T> annotation) {
-        if( !hasProperty(name) ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
-        Method reader = properties.get(name).getAccessor();
-        return reader != null ? reader.getAnnotation(annotation) : null;
+        return getAnnotations(getDefinition(name)).getReadAnnotation(annotation);
     }
     
     /**
      * {@inheritDoc}
      */
     public <T extends Annotation> T getWriteAnnotation(String name, Class<T> annotation) {
-        if( !hasProperty(name) ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
-        Method writer = properties.get(name).getMutator();
-        return writer != null ? writer.getAnnotation(annotation) : null;
+        return getAnnotations(getDefinition(name)).getWriteAnnotation(annotation);
     }
     
     /**
      * {@inheritDoc}
      */
-    public boolean canRead(String name) {
-        if( !hasProperty(name) ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
-        return properties.get(name).getAccessor() != null;
+    public <T extends Annotation> T getAnnotation(String name, Class<T> annotation) {
+        return getAnnotations(getDefinition(name)).getAnnotation(annotation);
     }
     
     /**
      * {@inheritDoc}
      */
-    public Object read(Object obj, String name) {
-        if( !hasProperty(name) ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
-        Method reader = properties.get(name).getAccessor();
-        if( reader == null ) throw new IllegalArgumentException("Cannot read property [" + name + "] as no accessor exists for bean type: " + type);
-        
-        try {
-            return reader.invoke(obj, (Object[])null);
+    public boolean hasAnnotation(String name, Class<? extends Annotation> annotation) {
+        return getAnnotations(getDefinition(name)).hasAnnotation(annotation);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> getPropertiesWithAnnotation(Class<? extends Annotation> annotation) {
+        ConcurrentHashMap<Class<?>, List<String>> cache = annotated;
+        if( cache == null ) {
+            synchronized( this ) {
+                if( annotated == null ) annotated = new ConcurrentHashMap<Class<?>, List<String>>();
+                cache = annotated;
+            }
         }
-        catch( RuntimeException e ) {
-            throw e;
+        
+        List<String> ret = cache.get(annotation);
+        if( ret == null ) {
+            List<String> props = new ArrayList<String>();
+            for( PropertyDefinition def : definitions ) {
+                if( getAnnotations(def).hasAnnotation(annotation) ) props.add(def.getName());
+            }
+            
+            ret = props.isEmpty() ? Collections.<String>emptyList() : Collections.unmodifiableList(props);
+            List<String> existing = cache.putIfAbsent(annotation, ret);
+            if( existing != null ) ret = existing;
         }
-        catch( Exception e ) {
-            throw new RuntimeException("Cannot read property [" + name + "] due to caught exception: " + type, e);
+        return ret;
+    }
+    
+    /**
+     * Internal helper to get the annotations of a property,
+     * indexing them the first time they are needed.
+     * 
+     * @param def The property
+     * @return The annotations of the property
+     */
+    private PropertyAnnotations getAnnotations(PropertyDefinition def) {
+        PropertyAnnotations ret = def.annotations;
+        if( ret == null ) {
+            Field field = def.getField();
+            AnnotatedElement reader = def.getAccessor() != null ? def.getAccessor() : field;
+            AnnotatedElement writer = def.getMutator() != null ? def.getMutator() : (def.canWrite() ? field : null);
+            
+            // Any race just indexes the same annotations again
+            ret = new PropertyAnnotations(type, def.getName(), reader, writer, field);
+            def.annotations = ret;
         }
+        return ret;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean canRead(String name) {
+        return getDefinition(name).canRead();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Object read(Object obj, String name) {
+        return getDefinition(name).read(obj);
     }
     
     /**
@@ -263,27 +751,84 @@ public final class BeanDefinitionImpl implements BeanDefinition {
      * {@inheritDoc}
      */
     public boolean canWrite(String name) {
-        if( !hasProperty(name) ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
-        return properties.get(name).getMutator() != null;
+        return getDefinition(name).canWrite();
     }
     
     /**
      * {@inheritDoc}
      */
     public void write(Object obj, String name, Object val) {
-        if( !hasProperty(name) ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
-        Method writer = properties.get(name).getMutator();
-        if( writer == null ) throw new IllegalArgumentException("Cannot write property [" + name + "] as no mutator exists for bean type: " + type);
-        
-        try {
-            writer.invoke(obj, val);
-        }
-        catch( RuntimeException e ) {
-            throw e;
-        }
-        catch( Exception e ) {
-            throw new RuntimeException("Cannot write property [" + name + "] due to caught exception: " + type, e);
-        }
+        getDefinition(name).write(obj, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public int readInt(Object obj, String name) {
+        return getDefinition(name).readInt(obj);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void writeInt(Object obj, String name, int val) {
+        getDefinition(name).writeInt(obj, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long readLong(Object obj, String name) {
+        return getDefinition(name).readLong(obj);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void writeLong(Object obj, String name, long val) {
+        getDefinition(name).writeLong(obj, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public double readDouble(Object obj, String name) {
+        return getDefinition(name).readDouble(obj);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void writeDouble(Object obj, String name, double val) {
+        getDefinition(name).writeDouble(obj, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public boolean readBoolean(Object obj, String name) {
+        return getDefinition(name).readBoolean(obj);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void writeBoolean(Object obj, String name, boolean val) {
+        getDefinition(name).writeBoolean(obj, val);
+    }
+    
+    /**
+     * Internal helper to get the definition of a property
+     * with a single lookup.
+     * 
+     * @param name The name of the property
+     * @return The property definition
+     * @throws IllegalArgumentException If the property does not exist
+     */
+    private PropertyDefinition getDefinition(String name) {
+        int index = indexOf(name);
+        if( index < 0 ) throw new IllegalArgumentException("Property [" + name + "] does not exist for bean type: " + type);
+        return definitions[index];
     }
     
     /* (non-Javadoc)
@@ -293,9 +838,9 @@ public final class BeanDefinitionImpl implements BeanDefinition {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((balancedProperties == null) ? 0 : balancedProperties.hashCode());
-        result = prime * result + ((properties == null) ? 0 : properties.hashCode());
-        result = prime * result + ((readOnlyProperties == null) ? 0 : readOnlyProperties.hashCode());
+        result = prime * result + Arrays.hashCode(balancedIndexes);
+        result = prime * result + Arrays.hashCode(definitions);
+        result = prime * result + Arrays.hashCode(readOnlyIndexes);
         result = prime * result + ((type == null) ? 0 : type.getName().hashCode());
         return result;
     }
@@ -309,18 +854,9 @@ public final class BeanDefinitionImpl implements BeanDefinition {
         if( obj == null ) return false;
         if( getClass() != obj.getClass() ) return false;
         BeanDefinitionImpl other = (BeanDefinitionImpl)obj;
-        if( balancedProperties == null ) {
-            if( other.balancedProperties != null ) return false;
-        }
-        else if( !balancedProperties.equals(other.balancedProperties) ) return false;
-        if( properties == null ) {
-            if( other.properties != null ) return false;
-        }
-        else if( !properties.equals(other.properties) ) return false;
-        if( readOnlyProperties == null ) {
-            if( other.readOnlyProperties != null ) return false;
-        }
-        else if( !readOnlyProperties.equals(other.readOnlyProperties) ) return false;
+        if( !Arrays.equals(balancedIndexes, other.balancedIndexes) ) return false;
+        if( !Arrays.equals(definitions, other.definitions) ) return false;
+        if( !Arrays.equals(readOnlyIndexes, other.readOnlyIndexes) ) return false;
         if( type == null ) {
             if( other.type != null ) return false;
         }
@@ -334,52 +870,325 @@ public final class BeanDefinitionImpl implements BeanDefinition {
     @Override
     public String toString() {
         return "BeanDefinitionImpl [balancedProperties=" + balancedProperties 
-            + ", properties=" + properties 
+            + ", properties=" + Arrays.asList(definitions) 
             + ", readOnlyProperties=" + readOnlyProperties
             + ", type=" + type + "]";
     }
 
+    /**
+     * Internal helper to hold the generic types of a property
+     * once they have been resolved against the bean class.
+     *
+     * @author Tom Spencer
+     */
+    private final static class PropertyTypes {
+        /** The declared generic type */
+        private final Type genericType;
+        /** The element type if an array or collection */
+        private final Class<?> elementType;
+        /** The key type if a map */
+        private final Class<?> keyType;
+        /** The value type if a map */
+        private final Class<?> valueType;
+        
+        public PropertyTypes(PropertyDefinition def, GenericTypeResolver resolver) {
+            if( def.getAccessor() != null ) genericType = def.getAccessor().getGenericReturnType();
+            else if( def.getMutator() != null ) genericType = def.getMutator().getGenericParameterTypes()[0];
+            else if( def.getField() != null ) genericType = def.getField().getGenericType();
+            else genericType = def.getType();
+            
+            Class<?> type = def.getType();
+            if( type.isArray() ) elementType = resolver.resolveComponent(genericType);
+            else if( Collection.class.isAssignableFrom(type) ) elementType = resolver.resolveArgument(genericType, Collection.class, 0);
+            else elementType = null;
+            
+            if( Map.class.isAssignableFrom(type) ) {
+                keyType = resolver.resolveArgument(genericType, Map.class, 0);
+                valueType = resolver.resolveArgument(genericType, Map.class, 1);
+            }
+            else {
+                keyType = null;
+                valueType = null;
+            }
+        }
+    }
+    
+    /**
+     * Internal helper to hold the compiled property paths 
+     * along with the version of the bean definitions they
+     * were compiled against. Only the most recently used
+     * paths are kept, so expressions built on the fly (i.e.
+     * with a different key each time) do not grow the cache
+     * without limit. Access must be synchronized on the cache.
+     *
+     * @author Tom Spencer
+     */
+    private final static class PathCache extends LinkedHashMap<String, PropertyPath> {
+        private static final long serialVersionUID = 1L;
+        
+        /** The maximum number of paths held for a bean */
+        private static final int MAX_PATHS = 64;
+        
+        /** The version of the bean definitions the paths were compiled against */
+        private final long version;
+        
+        public PathCache(long version) {
+            super(16, 0.75f, true);
+            this.version = version;
+        }
+        
+        /**
+         * Removes the least recently used path once full
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PropertyPath> eldest) {
+            return size() > MAX_PATHS;
+        }
+    }
+    
+    /**
+     * Internal helper to present a group of properties, held
+     * as indexes, as a read only list of their names.
+     *
+     * @author Tom Spencer
+     */
+    private final static class PropertyNames extends AbstractList<String> implements RandomAccess {
+        /** The names of all the properties */
+        private final String[] names;
+        /** The indexes of the properties in this list */
+        private final int[] indexes;
+        
+        public PropertyNames(String[] names, int[] indexes) {
+            this.names = names;
+            this.indexes = indexes;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String get(int index) {
+            return names[indexes[index]];
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return indexes.length;
+        }
+    }
+
     /**
      * Internal helper to hold any one properties type,
      * accessor and mutator. We do this because 
      * {@link PropertyDescriptor} has synchronised methods
-     * for the methods.
+     * for the methods. The {@link PropertyAccessor} used
+     * to actually read and write the property is resolved
+     * once, the first time the property is used. This class
+     * also serves as the properties {@link PropertyHandle}.
      *
      * @author Tom Spencer
      */
-    private final static class PropertyDefinition {
+    private final static class PropertyDefinition implements PropertyHandle {
         //private final PropertyDescriptor property;
+        private final Class<?> beanType;
+        private final int index;
         private final Class<?> type;
-        private final Method accessor;
-        private final Method mutator;
+        /** The accessor, replaced by the real accessor once a deferred one is resolved */
+        private volatile PropertyAccessor propertyAccessor;
+        /** The generic types once resolved (see {@link BeanDefinitionImpl#getTypes(PropertyDefinition)}) */
+        private volatile PropertyTypes types;
+        /** The annotations once indexed (see {@link BeanDefinitionImpl#getAnnotations(PropertyDefinition)}) */
+        private volatile PropertyAnnotations annotations;
         
-        public PropertyDefinition(PropertyDescriptor prop) {
+        public PropertyDefinition(Class<?> beanType, int index, PropertyAccessor accessor) {
             //this.property = prop;
-            this.type = prop.getPropertyType();
-            this.accessor = prop.getReadMethod();
-            this.mutator = prop.getWriteMethod();
+            this.beanType = beanType;
+            this.index = index;
+            this.type = accessor.getType();
+            this.propertyAccessor = accessor;
+        }
+        
+        /**
+         * Gets the accessor to read and write the property
+         * with, resolving it if it has been deferred.
+         * 
+         * @return The accessor
+         */
+        PropertyAccessor accessor() {
+            PropertyAccessor ret = propertyAccessor;
+            if( ret instanceof DeferredPropertyAccessor ) {
+                ret = ((DeferredPropertyAccessor)ret).resolve();
+                propertyAccessor = ret;
+            }
+            return ret;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public String getName() {
+            return propertyAccessor.getName();
         }
         
         /**
-         * @return The properties type
+         * {@inheritDoc}
+         */
+        public int getIndex() {
+            return index;
+        }
+        
+        /**
+         * {@inheritDoc}
          */
         public Class<?> getType() {
             return type;
         }
         
+        /**
+         * {@inheritDoc}
+         */
+        public boolean canRead() {
+            return propertyAccessor.canRead();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public boolean canWrite() {
+            return propertyAccessor.canWrite();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public boolean hasPrimitiveAccess() {
+            return accessor().hasPrimitiveAccess();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public Object read(Object obj) {
+            if( !propertyAccessor.canRead() ) throw new IllegalArgumentException("Cannot read property [" + getName() + "] as no accessor exists for bean type: " + beanType);
+            return accessor().get(obj);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void write(Object obj, Object val) {
+            if( !propertyAccessor.canWrite() ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as no mutator exists for bean type: " + beanType);
+            accessor().set(obj, val);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public int readInt(Object obj) {
+            checkType(int.class);
+            if( !propertyAccessor.canRead() ) throw new IllegalArgumentException("Cannot read property [" + getName() + "] as no accessor exists for bean type: " + beanType);
+            return accessor().getInt(obj);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void writeInt(Object obj, int val) {
+            checkType(int.class);
+            if( !propertyAccessor.canWrite() ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as no mutator exists for bean type: " + beanType);
+            accessor().setInt(obj, val);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public long readLong(Object obj) {
+            checkType(long.class);
+            if( !propertyAccessor.canRead() ) throw new IllegalArgumentException("Cannot read property [" + getName() + "] as no accessor exists for bean type: " + beanType);
+            return accessor().getLong(obj);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void writeLong(Object obj, long val) {
+            checkType(long.class);
+            if( !propertyAccessor.canWrite() ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as no mutator exists for bean type: " + beanType);
+            accessor().setLong(obj, val);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public double readDouble(Object obj) {
+            checkType(double.class);
+            if( !propertyAccessor.canRead() ) throw new IllegalArgumentException("Cannot read property [" + getName() + "] as no accessor exists for bean type: " + beanType);
+            return accessor().getDouble(obj);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void writeDouble(Object obj, double val) {
+            checkType(double.class);
+            if( !propertyAccessor.canWrite() ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as no mutator exists for bean type: " + beanType);
+            accessor().setDouble(obj, val);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public boolean readBoolean(Object obj) {
+            checkType(boolean.class);
+            if( !propertyAccessor.canRead() ) throw new IllegalArgumentException("Cannot read property [" + getName() + "] as no accessor exists for bean type: " + beanType);
+            return accessor().getBoolean(obj);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        public void writeBoolean(Object obj, boolean val) {
+            checkType(boolean.class);
+            if( !propertyAccessor.canWrite() ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as no mutator exists for bean type: " + beanType);
+            accessor().setBoolean(obj, val);
+        }
+        
+        /**
+         * Helper to ensure the property is of the given primitive
+         * type. Properties of the object equivalent are not allowed
+         * as they may hold null, which has no primitive value.
+         * 
+         * @param primitive The primitive type
+         * @throws IllegalArgumentException If it is not
+         */
+        private void checkType(Class<?> primitive) {
+            if( type != primitive ) throw new IllegalArgumentException("Property [" + getName() + "] is not of type [" + primitive + "] for bean type: " + beanType);
+        }
+        
         /**
          * @return The properties accessor method (or null)
          */
         public Method getAccessor() {
-            return accessor;
+            return propertyAccessor.getReadMethod();
         }
         
         /**
          * @return The properties mutator method (or null)
          */
         public Method getMutator() {
-            return mutator;
+            return propertyAccessor.getWriteMethod();
         }
+        
+        /**
+         * @return The properties field if accessed directly (or null)
+         */
+        public Field getField() {
+            return propertyAccessor.getField();
+        }
+        
 
         /* (non-Javadoc)
          * @see java.lang.Object#hashCode()
@@ -388,8 +1197,11 @@ public final class BeanDefinitionImpl implements BeanDefinition {
         public int hashCode() {
             final int prime = 31;
             int result = 1;
+            Method accessor = getAccessor();
+            Method mutator = getMutator();
             result = prime * result + ((accessor == null) ? 0 : accessor.hashCode());
             result = prime * result + ((mutator == null) ? 0 : mutator.hashCode());
+            result = prime * result + getName().hashCode();
             result = prime * result + ((type == null) ? 0 : type.getName().hashCode());
             return result;
         }
@@ -403,14 +1215,17 @@ public final class BeanDefinitionImpl implements BeanDefinition {
             if( obj == null ) return false;
             if( getClass() != obj.getClass() ) return false;
             PropertyDefinition other = (PropertyDefinition)obj;
+            Method accessor = getAccessor();
+            Method mutator = getMutator();
             if( accessor == null ) {
-                if( other.accessor != null ) return false;
+                if( other.getAccessor() != null ) return false;
             }
-            else if( !accessor.equals(other.accessor) ) return false;
+            else if( !accessor.equals(other.getAccessor()) ) return false;
             if( mutator == null ) {
-                if( other.mutator != null ) return false;
+                if( other.getMutator() != null ) return false;
             }
-            else if( !mutator.equals(other.mutator) ) return false;
+            else if( !mutator.equals(other.getMutator()) ) return false;
+            if( !getName().equals(other.getName()) ) return false;
             if( type == null ) {
                 if( other.type != null ) return false;
             }
@@ -423,7 +1238,7 @@ public final class BeanDefinitionImpl implements BeanDefinition {
          */
         @Override
         public String toString() {
-            return "PropertyDefinition [accessor=" + accessor + ", mutator=" + mutator + ", type=" + type + "]";
+            return "PropertyDefinition [accessor=" + propertyAccessor + ", type=" + type + "]";
         }
     }
 }
@@ -22,8 +22,13 @@
  */
 package org.talframework.util.beans.definition;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.talframework.tal.aspects.annotations.TraceWarn;
 import org.talframework.util.beans.BeanDefinition;
 
 /**
@@ -33,22 +38,77 @@ import org.talframework.util.beans.BeanDefinition;
  * a ConcurrentHashMap so is quite fast and does not block
  * on reads.
  * 
+ * <p>The definitions are held against the class itself, so
+ * classes of the same name from different classloaders get
+ * their own definition. When a definition does not exist 
+ * only one thread creates it, any other threads asking for
+ * the same class at the same time wait for that definition
+ * rather than introspecting the class themselves.</p>
+ * 
+ * <p>By default the definitions are held strongly and the
+ * cache is unbounded. If this library is shared between
+ * classloaders that come and go (i.e. webapps in an app
+ * server) then the classes should be held weakly so that
+ * the definitions do not stop those classloaders from being
+ * unloaded. The cache can also be bounded, which is useful
+ * if definitions are obtained for generated classes such as
+ * proxies. See {@link #setWeakKeys(boolean)} and 
+ * {@link #setMaximumSize(int)}. Changing the configuration
+ * keeps all the existing definitions.</p>
+ * 
+ * <p>The classes that definitions are created for can be
+ * recorded to a profile file during a training run, see
+ * {@link #recordProfile(File)}. On the next start the profile
+ * can be replayed, see {@link #replayProfile(File)}, so that 
+ * those definitions are created in the background before they
+ * are first used. Setting the system property 
+ * {@value #PROFILE_PROPERTY} to the name of a file does both
+ * automatically, replaying the file if it exists and then
+ * recording to it when the JVM exits.</p>
+ * 
+ * <p>When classes are redefined or reloaded their definitions
+ * can be invalidated, see {@link #invalidate(Class)}, 
+ * {@link #invalidate(ClassLoader)} and {@link #invalidateAll()}.
+ * Each invalidation moves on the {@link #getVersion() version}.</p>
+ * 
  * <p>This class acts as a singleton per classloader.</p>
  *
  * @author Tom Spencer
  */
 public final class BeanDefinitionsSingleton {
+    /** The system property holding the profile file to replay and record */
+    public static final String PROFILE_PROPERTY = "org.talframework.util.beans.definition.profile";
+    
     /** Static member holds the single (per classloader) instance */
     private static final BeanDefinitionsSingleton INSTANCE = new BeanDefinitionsSingleton();
     
+    static {
+        String profile = System.getProperty(PROFILE_PROPERTY);
+        if( profile != null && profile.length() > 0 ) INSTANCE.startProfile(new File(profile));
+    }
+    
     /** Member holds the bean definitions we know about */
-    private final ConcurrentHashMap<String, BeanDefinition> beanDefinitions;
+    private volatile DefinitionCache beanDefinitions;
+    /** Indicates if the classes are held weakly */
+    private boolean weakKeys;
+    /** The maximum number of definitions to hold (0 = unbounded) */
+    private int maximumSize;
+    /** Indicates if the cache statistics should be recorded */
+    private boolean recordStatistics;
+    /** Indicates if the accessors of introspected properties are generated */
+    private boolean generateAccessors;
+    /** The profile the introspected classes are recorded in (or null) */
+    private DefinitionProfile profile;
+    /** The shutdown hook writing out the profile, registered the first time one is recorded */
+    private Thread profileWriter;
+    /** The version of the definitions, incremented each time any are invalidated */
+    private final AtomicLong version = new AtomicLong();
     
     /**
      * Hidden constructor
      */
     private BeanDefinitionsSingleton() {
-        this.beanDefinitions = new ConcurrentHashMap<String, BeanDefinition>();
+        this.beanDefinitions = new DefinitionCache(false, 0, false, null);
     }
     
     /**
@@ -68,13 +128,7 @@ public final class BeanDefinitionsSingleton {
      * @return The bean definition
      */
     public BeanDefinition getDefinition(Class<?> type) {
-        BeanDefinition ret = beanDefinitions.get(type.getName());
-        if( ret == null ) {
-            ret = new BeanDefinitionImpl(type);
-            beanDefinitions.put(type.getName(), ret);
-        }
-        
-        return ret;
+        return beanDefinitions.get(type);
     }
 
     /**
@@ -84,6 +138,336 @@ public final class BeanDefinitionsSingleton {
      * @param definition The bean definition to add
      */
     public void addDefinition(BeanDefinition definition) {
-        this.beanDefinitions.put(definition.getType().getName(), definition);
+        this.beanDefinitions.put(definition);
+    }
+    
+    /**
+     * Invalidates the definition of a class that has been
+     * redefined, along with the definitions of its subclasses.
+     * Threads already holding a definition keep a consistent
+     * view through it, the next request for the class gets a
+     * new definition. Lookups are never blocked by this.
+     * 
+     * @param type The class to invalidate
+     * @return The number of definitions invalidated
+     */
+    public synchronized int invalidate(Class<?> type) {
+        // Version only moves on once the definitions have gone, so anything rebuilt for it is current
+        int ret = beanDefinitions.invalidate(type);
+        version.incrementAndGet();
+        return ret;
+    }
+    
+    /**
+     * Invalidates the definitions of all the classes loaded by
+     * a classloader (or any classloader below it), which should
+     * be done when the classloader is discarded or reloaded.
+     * 
+     * @param loader The classloader
+     * @return The number of definitions invalidated
+     * @see #invalidate(Class)
+     */
+    public synchronized int invalidate(ClassLoader loader) {
+        int ret = beanDefinitions.invalidate(loader);
+        version.incrementAndGet();
+        return ret;
+    }
+    
+    /**
+     * Invalidates all the definitions.
+     * 
+     * @return The number of definitions invalidated
+     * @see #invalidate(Class)
+     */
+    public synchronized int invalidateAll() {
+        int ret = beanDefinitions.invalidateAll();
+        version.incrementAndGet();
+        return ret;
+    }
+    
+    /**
+     * Gets the version of the definitions, which changes each
+     * time definitions are invalidated. Anything holding on to
+     * definitions, or to anything built from them, can compare
+     * the version it was built at against this to know it must
+     * get the definitions again.
+     * 
+     * @return The current version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+    
+    /**
+     * Creates the definitions for the given classes up front
+     * so that the first request to use them does not pay the
+     * cost of introspection. The definitions are created in
+     * parallel, one thread per processor, and this method 
+     * returns once they are all created. Classes that cannot
+     * be defined are ignored.
+     * 
+     * @param types The classes to create definitions for
+     * @return The number of definitions created
+     */
+    public int warmUp(Collection<Class<?>> types) {
+        return new DefinitionWarmer(this, Runtime.getRuntime().availableProcessors()).warmUp(types);
+    }
+    
+    /**
+     * Creates the definitions for all the classes in the given
+     * packages (and their sub-packages) up front. The classes 
+     * are found using the context classloader.
+     * 
+     * @param packageNames The packages to create definitions for
+     * @return The number of definitions created
+     * @see #warmUp(Collection)
+     */
+    public int warmUp(String... packageNames) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if( loader == null ) loader = BeanDefinitionsSingleton.class.getClassLoader();
+        
+        DefinitionWarmer warmer = new DefinitionWarmer(this, Runtime.getRuntime().availableProcessors());
+        return warmer.warmUp(warmer.findClasses(loader, packageNames));
+    }
+    
+    /**
+     * Starts recording the classes that definitions are created
+     * for from this point on. The profile is written to the file
+     * when the JVM exits, or when {@link #writeProfile()} is 
+     * called. Definitions that already exist are not recorded.
+     * 
+     * @param file The file to write the profile to
+     */
+    public synchronized void recordProfile(File file) {
+        if( file == null ) throw new IllegalArgumentException("You must provide a file to record the profile in");
+        
+        profile = new DefinitionProfile(file);
+        reconfigure();
+        
+        // One hook writes whichever profile is being recorded when the JVM exits
+        if( profileWriter == null ) {
+            profileWriter = new Thread("BeanDefinitionProfileWriter") {
+                @Override
+                public void run() {
+                    writeProfile();
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(profileWriter);
+        }
+    }
+    
+    /**
+     * Stops recording the profile. Anything recorded so far
+     * is discarded unless {@link #writeProfile()} has been
+     * called first.
+     */
+    public synchronized void stopProfile() {
+        if( profile == null ) return;
+        
+        profile = null;
+        reconfigure();
+    }
+    
+    /**
+     * Writes out the profile being recorded now rather than
+     * waiting for the JVM to exit. Does nothing if a profile
+     * is not being recorded.
+     */
+    public void writeProfile() {
+        DefinitionProfile current = null;
+        synchronized( this ) {
+            current = profile;
+        }
+        
+        if( current != null ) current.write();
+    }
+    
+    /**
+     * Replays a profile recorded by {@link #recordProfile(File)}
+     * creating the definitions for all the classes in it in the
+     * background. This method returns immediately. The classes
+     * are loaded using the context classloader and any that
+     * cannot be found are ignored.
+     * 
+     * @param file The profile file to replay
+     * @return The background thread creating the definitions
+     */
+    public Thread replayProfile(File file) {
+        final List<String> classNames = DefinitionProfile.read(file);
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        final ClassLoader loader = contextLoader != null ? contextLoader : BeanDefinitionsSingleton.class.getClassLoader();
+        
+        Thread ret = new Thread("BeanDefinitionProfileReplay") {
+            @Override
+            public void run() {
+                List<Class<?>> types = new ArrayList<Class<?>>(classNames.size());
+                for( String name : classNames ) {
+                    try {
+                        types.add(Class.forName(name, false, loader));
+                    }
+                    catch( ClassNotFoundException e ) {
+                        // Class has gone since the profile was recorded
+                    }
+                    catch( LinkageError e ) {
+                        // Class cannot be loaded, it will fail when used
+                    }
+                }
+                
+                warmUp(types);
+            }
+        };
+        ret.setDaemon(true);
+        ret.setPriority(Thread.MIN_PRIORITY);
+        ret.start();
+        return ret;
+    }
+    
+    /**
+     * Replays the profile in the file, if it exists, and then
+     * records to it again. Recording starts first as definitions
+     * that already exist are not recorded, so the classes the 
+     * replay creates definitions for are recorded again. If the
+     * file cannot be read it is not replayed, as this is called
+     * while this class is being initialised.
+     * 
+     * @param file The profile file
+     * @return The background thread replaying the profile (or null if there is no file)
+     */
+    Thread startProfile(File file) {
+        recordProfile(file);
+        if( !file.isFile() ) return null;
+        
+        try {
+            return replayProfile(file);
+        }
+        catch( IllegalArgumentException e ) {
+            cannotReplayProfile(file, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Method is present to call so the aspect loggers can log it.
+     */
+    @TraceWarn
+    private void cannotReplayProfile(File file, IllegalArgumentException e) {
+    }
+    
+    /**
+     * @return The (approximate) number of definitions held
+     */
+    public int getSize() {
+        return beanDefinitions.size();
+    }
+    
+    /**
+     * @return The number of lookups that found a definition (if recording statistics)
+     */
+    public long getHitCount() {
+        return beanDefinitions.getHitCount();
+    }
+    
+    /**
+     * @return The number of lookups that had to create a definition (if recording statistics)
+     */
+    public long getMissCount() {
+        return beanDefinitions.getMissCount();
+    }
+    
+    /**
+     * @return The number of definitions evicted (if recording statistics)
+     */
+    public long getEvictionCount() {
+        return beanDefinitions.getEvictionCount();
+    }
+    
+    /**
+     * @return True if the classes are held weakly
+     */
+    public boolean isWeakKeys() {
+        return weakKeys;
+    }
+
+    /**
+     * Setter for the weakKeys field. If true the classes
+     * are held weakly and definitions for classes that do
+     * not belong to the classloader of this library are held
+     * softly, so they are only dropped when memory is short.
+     * 
+     * @param weakKeys True if the classes should be held weakly
+     */
+    public synchronized void setWeakKeys(boolean weakKeys) {
+        this.weakKeys = weakKeys;
+        reconfigure();
+    }
+
+    /**
+     * @return The maximum number of definitions held (0 is unbounded)
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Setter for the maximumSize field. Once the maximum is
+     * reached the oldest definitions are evicted.
+     * 
+     * @param maximumSize The maximum number of definitions to hold (0 is unbounded)
+     */
+    public synchronized void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+        reconfigure();
+    }
+
+    /**
+     * @return True if the hit, miss and eviction counts are being recorded
+     */
+    public boolean isRecordStatistics() {
+        return recordStatistics;
+    }
+
+    /**
+     * Setter for the recordStatistics field. Setting this
+     * resets the counts.
+     * 
+     * @param recordStatistics True if the hit, miss and eviction counts should be recorded
+     */
+    public synchronized void setRecordStatistics(boolean recordStatistics) {
+        this.recordStatistics = recordStatistics;
+        reconfigure();
+    }
+
+    /**
+     * @return True if the accessors of introspected properties are generated
+     */
+    public boolean isGenerateAccessors() {
+        return generateAccessors;
+    }
+
+    /**
+     * Setter for the generateAccessors field. If true a class
+     * calling the getters and setters directly is generated
+     * for each introspected bean the first time its properties
+     * are used, so they are not read and written reflectively.
+     * This requires the system Java compiler and compiling the
+     * class takes far longer than introspecting the bean, so it
+     * only pays off for beans that are used heavily. It only
+     * applies to definitions created after it is set.
+     * 
+     * @param generateAccessors True if the accessors should be generated
+     */
+    public synchronized void setGenerateAccessors(boolean generateAccessors) {
+        this.generateAccessors = generateAccessors;
+        reconfigure();
+    }
+    
+    /**
+     * Internal helper to replace the cache after a change
+     * in configuration, keeping the existing definitions.
+     */
+    private void reconfigure() {
+        DefinitionCache cache = new DefinitionCache(weakKeys, maximumSize, recordStatistics, profile, generateAccessors);
+        beanDefinitions.copyTo(cache);
+        beanDefinitions = cache;
     }
 }
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * This class compiles a generated class in memory with the
+ * system Java compiler and loads it in a classloader of its
+ * own. It is used by this library to generate classes that
+ * call the getters and setters of beans directly.
+ * 
+ * <p>The class is compiled against the system classpath and
+ * the locations of the classloaders of the given classes and
+ * this library, where they can be determined. It is loaded in
+ * a classloader below that of the first class given, which
+ * finds any other classes through the classloaders of the 
+ * other classes and this library in turn.</p>
+ * 
+ * <p>A class can only be compiled if there is a compiler, 
+ * i.e. running on a JDK.</p>
+ *
+ * @author Tom Spencer
+ */
+public final class ClassCompiler {
+    
+    /** The classes the generated class refers to */
+    private final Class<?>[] types;
+    
+    /**
+     * Constructs the compiler
+     * 
+     * @param types The classes the generated class refers to, the first is the one it is loaded below
+     */
+    public ClassCompiler(Class<?>... types) {
+        if( types == null || types.length == 0 ) throw new IllegalArgumentException("You must provide the classes the generated class refers to");
+        this.types = types.clone();
+    }
+    
+    /**
+     * Compiles and loads the class
+     * 
+     * @param name The fully qualified name of the class
+     * @param source The source of the class
+     * @return The loaded class
+     * @throws IllegalStateException If there is no compiler or the class does not compile
+     */
+    public Class<?> compile(String name, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if( compiler == null ) throw new IllegalStateException("There is no system java compiler to compile: " + name);
+        
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        MemoryFileManager fileManager = new MemoryFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+        List<String> options = Arrays.asList("-classpath", getClassPath(), "-proc:none", "-nowarn");
+        List<JavaFileObject> units = Collections.<JavaFileObject>singletonList(new SourceFile(name, source));
+        
+        Boolean ok = compiler.getTask(null, fileManager, diagnostics, options, null, units).call();
+        if( ok == null || !ok.booleanValue() ) throw new IllegalStateException("Cannot compile generated class [" + name + "]: " + diagnostics.getDiagnostics());
+        
+        GeneratedClassLoader loader = new GeneratedClassLoader(types);
+        Class<?> ret = null;
+        for( Map.Entry<String, ClassFile> entry : fileManager.getClassFiles().entrySet() ) {
+            Class<?> loaded = loader.define(entry.getKey(), entry.getValue().getBytes());
+            if( entry.getKey().equals(name) ) ret = loaded;
+        }
+        if( ret == null ) throw new IllegalStateException("Compiling generated class did not produce it: " + name);
+        return ret;
+    }
+    
+    /**
+     * Internal helper to get the classpath to compile against.
+     * This is the system classpath plus the locations of the
+     * classloaders of the classes and this library.
+     */
+    private String getClassPath() {
+        Set<String> paths = new LinkedHashSet<String>();
+        String classPath = System.getProperty("java.class.path");
+        if( classPath != null ) paths.addAll(Arrays.asList(classPath.split(File.pathSeparator)));
+        
+        ClassLoader[] loaders = new ClassLoader[types.length + 1];
+        for( int i = 0 ; i < types.length ; i++ ) loaders[i] = types[i].getClassLoader();
+        loaders[types.length] = ClassCompiler.class.getClassLoader();
+        for( ClassLoader loader : loaders ) {
+            while( loader != null ) {
+                if( loader instanceof URLClassLoader ) {
+                    for( URL url : ((URLClassLoader)loader).getURLs() ) {
+                        if( !"file".equals(url.getProtocol()) ) continue;
+                        try {
+                            paths.add(new File(url.toURI()).getPath());
+                        }
+                        catch( URISyntaxException e ) {
+                            // Cannot be a location to compile against
+                        }
+                    }
+                }
+                loader = loader.getParent();
+            }
+        }
+        
+        StringBuilder ret = new StringBuilder();
+        for( String path : paths ) {
+            if( path.length() == 0 ) continue;
+            if( ret.length() > 0 ) ret.append(File.pathSeparatorChar);
+            ret.append(path);
+        }
+        return ret.toString();
+    }
+    
+    /**
+     * The source of the class held in memory
+     */
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final String source;
+        
+        public SourceFile(String name, String source) {
+            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+        
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+    
+    /**
+     * A compiled class held in memory
+     */
+    private static final class ClassFile extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        
+        public ClassFile(String name) {
+            super(URI.create("bytes:///" + name.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        }
+        
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+        
+        public byte[] getBytes() {
+            return bytes.toByteArray();
+        }
+    }
+    
+    /**
+     * File manager that keeps the compiled classes in memory
+     */
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, ClassFile> classes = new HashMap<String, ClassFile>();
+        
+        public MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+        
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            ClassFile ret = new ClassFile(className);
+            classes.put(className, ret);
+            return ret;
+        }
+        
+        public Map<String, ClassFile> getClassFiles() {
+            return classes;
+        }
+    }
+    
+    /**
+     * Loads the generated classes. Other classes are found 
+     * through the classloaders of the classes the generated 
+     * class refers to and this library in turn.
+     */
+    private static final class GeneratedClassLoader extends ClassLoader {
+        private final Class<?>[] types;
+        
+        public GeneratedClassLoader(Class<?>[] types) {
+            super(types[0].getClassLoader());
+            this.types = types;
+        }
+        
+        public synchronized Class<?> define(String name, byte[] bytes) {
+            Class<?> ret = findLoadedClass(name);
+            if( ret == null ) ret = defineClass(name, bytes, 0, bytes.length);
+            return ret;
+        }
+        
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            for( int i = 1 ; i < types.length ; i++ ) {
+                try {
+                    return Class.forName(name, false, types[i].getClassLoader());
+                }
+                catch( ClassNotFoundException e ) {
+                    // Try the next one
+                }
+            }
+            return Class.forName(name, false, ClassCompiler.class.getClassLoader());
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.PropertyHandle;
+import org.talframework.util.beans.PropertyPath;
+
+/**
+ * This class is the compiled form of a {@link PropertyPath}.
+ * The expression is parsed once into a chain of steps, each
+ * resolved against the declared type of the previous step. 
+ * Where a property cannot be resolved against the declared
+ * type (i.e. it is declared as Object or a raw collection)
+ * that step looks up the definition of the actual object 
+ * each time instead. The element, key and value types of
+ * containers are those resolved by the definition, so keys
+ * into a Map are converted to its declared key type.
+ *
+ * @author Tom Spencer
+ */
+final class CompiledPropertyPath implements PropertyPath {
+
+    /** The type of the root bean */
+    private final Class<?> rootType;
+    /** The expression */
+    private final String expression;
+    /** The steps along the path */
+    private final Step[] steps;
+    
+    /**
+     * Constructs and compiles the path
+     * 
+     * @param root The definition of the root bean
+     * @param expression The expression
+     * @throws IllegalArgumentException If the expression is invalid
+     */
+    public CompiledPropertyPath(BeanDefinition root, String expression) {
+        if( expression == null || expression.length() == 0 ) throw new IllegalArgumentException("You must provide a property path");
+        
+        this.rootType = root.getType();
+        this.expression = expression;
+        this.steps = compile(root, expression);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public String getExpression() {
+        return expression;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Class<?> getRootType() {
+        return rootType;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Class<?> getType() {
+        return steps[steps.length - 1].type;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public Object read(Object root) {
+        Object ret = root;
+        for( int i = 0 ; i < steps.length && ret != null ; i++ ) {
+            ret = steps[i].get(ret);
+        }
+        return ret;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void write(Object root, Object val) {
+        write(root, val, false);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public void write(Object root, Object val, boolean autoCreate) {
+        if( root == null ) throw new IllegalArgumentException("Cannot write path [" + expression + "] to a null bean");
+        
+        Object current = root;
+        for( int i = 0 ; i < steps.length - 1 ; i++ ) {
+            Object next = steps[i].get(current);
+            if( next == null ) {
+                if( !autoCreate ) throw new IllegalArgumentException("Cannot write path [" + expression + "] as [" + steps[i].path + "] is null");
+                next = newInstance(steps[i].type, steps[i].path);
+                steps[i].set(current, next);
+            }
+            current = next;
+        }
+        
+        steps[steps.length - 1].set(current, val);
+    }
+    
+    /**
+     * Internal helper to parse the expression into steps
+     * 
+     * @param root The definition of the root bean
+     * @param expression The expression
+     * @return The steps
+     */
+    private static Step[] compile(BeanDefinition root, String expression) {
+        List<Step> ret = new ArrayList<Step>();
+        
+        BeanDefinition definition = root;
+        Step step = null;
+        for( String part : expression.split("\\.", -1) ) {
+            int bracket = part.indexOf('[');
+            String name = bracket < 0 ? part : part.substring(0, bracket);
+            if( name.length() == 0 ) throw new IllegalArgumentException("The property path [" + expression + "] has an empty property name");
+            
+            String path = step != null ? step.path + "." + name : name;
+            step = definition != null ? PropertyStep.create(definition, name, path) : new PropertyStep(name, path);
+            ret.add(step);
+            
+            while( bracket >= 0 ) {
+                int close = part.indexOf(']', bracket);
+                if( close < 0 ) throw new IllegalArgumentException("The property path [" + expression + "] has an unclosed index");
+                
+                String key = part.substring(bracket + 1, close);
+                step = new IndexStep(step, key, step.path + part.substring(bracket, close + 1));
+                ret.add(step);
+                
+                bracket = close + 1;
+                if( bracket == part.length() ) bracket = -1;
+                else if( part.charAt(bracket) != '[' ) throw new IllegalArgumentException("The property path [" + expression + "] has characters after an index");
+            }
+            
+            definition = getDefinition(step.type);
+        }
+        
+        return ret.toArray(new Step[ret.size()]);
+    }
+    
+    /**
+     * Internal helper to get the definition for the declared
+     * type of a step, if it is a type we can define statically.
+     * 
+     * @param type The declared type
+     * @return The definition or null if the type needs to be resolved each time
+     */
+    private static BeanDefinition getDefinition(Class<?> type) {
+        if( type == Object.class || type.isPrimitive() || type.isArray() ) return null;
+        if( Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type) ) return null;
+        return BeanDefinitionsSingleton.getInstance().getDefinition(type);
+    }
+    
+    /**
+     * Internal helper to create an object along the path
+     * 
+     * @param type The type to create
+     * @param path The path to the object (for errors)
+     * @return The new object
+     */
+    private Object newInstance(Class<?> type, String path) {
+        if( type == Object.class || type.isPrimitive() || type.isArray() ) throw new IllegalArgumentException("Cannot write path [" + expression + "] as [" + path + "] is null and cannot be created");
+        else if( type.isAssignableFrom(ArrayList.class) ) return new ArrayList<Object>();
+        else if( type.isAssignableFrom(HashMap.class) ) return new HashMap<Object, Object>();
+        else if( type.isAssignableFrom(HashSet.class) ) return new HashSet<Object>();
+        else return BeanDefinitionsSingleton.getInstance().getDefinition(type).newInstance();
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "CompiledPropertyPath [expression=" + expression + ", rootType=" + rootType + "]";
+    }
+    
+    /**
+     * A single step along the path
+     *
+     * @author Tom Spencer
+     */
+    private static abstract class Step {
+        /** The path up to and including this step */
+        protected final String path;
+        /** The declared type of the result of this step */
+        protected final Class<?> type;
+        /** The declared element type if the result is a container */
+        protected final Class<?> elementType;
+        /** The declared key type if the result is a Map (or null if not known) */
+        protected final Class<?> keyType;
+        
+        protected Step(String path, Class<?> type, Class<?> elementType, Class<?> keyType) {
+            this.path = path;
+            this.type = type;
+            this.elementType = elementType != null ? elementType : Object.class;
+            this.keyType = keyType;
+        }
+        
+        /**
+         * @param obj The object to get from
+         * @return The result of this step
+         */
+        public abstract Object get(Object obj);
+        
+        /**
+         * @param obj The object to set on
+         * @param val The new result of this step
+         */
+        public abstract void set(Object obj, Object val);
+    }
+    
+    /**
+     * A step that reads or writes a property
+     *
+     * @author Tom Spencer
+     */
+    private static final class PropertyStep extends Step {
+        /** The name of the property */
+        private final String name;
+        /** The handle of the property (or null if resolved each time) */
+        private final PropertyHandle handle;
+        
+        /**
+         * Creates a step resolved against the definition if it
+         * has the property, otherwise resolved each time
+         */
+        public static PropertyStep create(BeanDefinition definition, String name, String path) {
+            PropertyHandle handle = definition.getPropertyHandle(name);
+            if( handle == null ) return new PropertyStep(name, path);
+            
+            Class<?> type = handle.getType();
+            if( Map.class.isAssignableFrom(type) ) return new PropertyStep(name, path, handle, definition.getPropertyValueType(name), definition.getPropertyKeyType(name));
+            else if( type.isArray() || Collection.class.isAssignableFrom(type) ) return new PropertyStep(name, path, handle, definition.getPropertyElementType(name), null);
+            else return new PropertyStep(name, path, handle, null, null);
+        }
+        
+        /**
+         * Constructs a step resolved each time
+         */
+        public PropertyStep(String name, String path) {
+            super(path, Object.class, null, null);
+            this.name = name;
+            this.handle = null;
+        }
+        
+        /**
+         * Constructs a step against a resolved property
+         */
+        private PropertyStep(String name, String path, PropertyHandle handle, Class<?> elementType, Class<?> keyType) {
+            super(path, handle.getType(), elementType, keyType);
+            this.name = name;
+            this.handle = handle;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object get(Object obj) {
+            return getHandle(obj).read(obj);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void set(Object obj, Object val) {
+            getHandle(obj).write(obj, val);
+        }
+        
+        /**
+         * @return The handle to use against the object
+         */
+        private PropertyHandle getHandle(Object obj) {
+            if( handle != null ) return handle;
+            
+            PropertyHandle ret = BeanDefinitionsSingleton.getInstance().getDefinition(obj.getClass()).getPropertyHandle(name);
+            if( ret == null ) throw new IllegalArgumentException("Property [" + path + "] does not exist for bean type: " + obj.getClass());
+            return ret;
+        }
+    }
+    
+    /**
+     * A step that indexes into a List or array, or gets a
+     * key from a Map
+     *
+     * @author Tom Spencer
+     */
+    private static final class IndexStep extends Step {
+        /** The key (converted to the declared key type of a Map) */
+        private final Object key;
+        /** The index (or -1 if key is not a number) */
+        private final int index;
+        
+        public IndexStep(Step container, String key, String path) {
+            super(path, container.elementType, null, null);
+            String unquoted = unquote(key);
+            this.key = toKey(unquoted, container.keyType, path);
+            this.index = toIndex(unquoted);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object get(Object obj) {
+            if( obj instanceof Map<?, ?> ) {
+                return ((Map<Object, Object>)obj).get(key);
+            }
+            else if( obj instanceof List<?> ) {
+                List<?> list = (List<?>)obj;
+                return checkIndex() < list.size() ? list.get(index) : null;
+            }
+            else if( obj.getClass().isArray() ) {
+                return checkIndex() < Array.getLength(obj) ? Array.get(obj, index) : null;
+            }
+            else {
+                throw new IllegalArgumentException("Cannot index property [" + path + "] as it is not a List, Map or array: " + obj.getClass());
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void set(Object obj, Object val) {
+            if( obj instanceof Map<?, ?> ) {
+                ((Map<Object, Object>)obj).put(key, val);
+            }
+            else if( obj instanceof List<?> ) {
+                List<Object> list = (List<Object>)obj;
+                while( list.size() <= checkIndex() ) list.add(null);
+                list.set(index, val);
+            }
+            else if( obj.getClass().isArray() ) {
+                Array.set(obj, checkIndex(), val);
+            }
+            else {
+                throw new IllegalArgumentException("Cannot index property [" + path + "] as it is not a List, Map or array: " + obj.getClass());
+            }
+        }
+        
+        /**
+         * @return The index
+         * @throws IllegalArgumentException If the key is not an index
+         */
+        private int checkIndex() {
+            if( index < 0 ) throw new IllegalArgumentException("The index of property [" + path + "] is not a number");
+            return index;
+        }
+        
+        /**
+         * Converts the key to the declared key type of a Map
+         * 
+         * @param key The key as given in the expression
+         * @param keyType The declared key type (or null if not known)
+         * @param path The path (for errors)
+         * @return The key as the key type
+         * @throws IllegalArgumentException If the key cannot be converted
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private static Object toKey(String key, Class<?> keyType, String path) {
+            if( keyType == null || keyType.isAssignableFrom(String.class) ) return key;
+            
+            try {
+                if( keyType == Integer.class ) return Integer.valueOf(key);
+                else if( keyType == Long.class ) return Long.valueOf(key);
+                else if( keyType == Short.class ) return Short.valueOf(key);
+                else if( keyType == Byte.class ) return Byte.valueOf(key);
+                else if( keyType == Double.class ) return Double.valueOf(key);
+                else if( keyType == Float.class ) return Float.valueOf(key);
+                else if( keyType == Boolean.class ) return Boolean.valueOf(key);
+                else if( keyType == Character.class && key.length() == 1 ) return Character.valueOf(key.charAt(0));
+                else if( keyType.isEnum() ) return Enum.valueOf((Class<Enum>)keyType, key);
+            }
+            catch( IllegalArgumentException e ) {
+                throw new IllegalArgumentException("The key of property [" + path + "] is not a valid " + keyType.getName(), e);
+            }
+            
+            throw new IllegalArgumentException("The key of property [" + path + "] cannot be converted to a " + keyType.getName());
+        }
+        
+        /**
+         * @return The key without any quotes
+         */
+        private static String unquote(String key) {
+            if( key.length() >= 2 ) {
+                char first = key.charAt(0);
+                if( (first == '\'' || first == '"') && key.charAt(key.length() - 1) == first ) return key.substring(1, key.length() - 1);
+            }
+            return key;
+        }
+        
+        /**
+         * @return The key as an index or -1 if it is not a number
+         */
+        private static int toIndex(String key) {
+            if( key.length() == 0 ) return -1;
+            for( int i = 0 ; i < key.length() ; i++ ) {
+                if( !Character.isDigit(key.charAt(i)) ) return -1;
+            }
+            
+            try {
+                return Integer.parseInt(key);
+            }
+            catch( NumberFormatException e ) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.Method;
+
+/**
+ * This {@link PropertyAccessor} stands in for the accessor of
+ * an introspected property until the property is first used.
+ * It holds only what is needed to know the property exists and
+ * whether it can be read or written. The real accessor, either
+ * the one the superclass definition already resolved, one that
+ * is generated (see {@link AccessorGenerator}) or else a new
+ * {@link MethodPropertyAccessor}, is only resolved the first
+ * time the property is read or written, so properties that are
+ * never used are never resolved. Once resolved the definition
+ * of the superclass is no longer referred to.
+ * 
+ * <p>Any race to resolve the accessor just resolves an equivalent
+ * accessor again, so no locking is needed.</p>
+ *
+ * @author Tom Spencer
+ */
+final class DeferredPropertyAccessor extends PropertyAccessor {
+    
+    /** The getter (or null) */
+    private final Method reader;
+    /** The setter (or null) */
+    private final Method writer;
+    /** The definition of the superclass to reuse accessors from (null once resolved) */
+    private volatile BeanDefinitionImpl inherited;
+    /** The generator of the accessors for the bean (null if not generated or once resolved) */
+    private volatile AccessorGenerator generator;
+    /** The accessor once resolved */
+    private volatile PropertyAccessor accessor;
+    
+    /**
+     * Constructs the accessor
+     * 
+     * @param name The name of the property
+     * @param type The type of the property
+     * @param reader The getter (or null)
+     * @param writer The setter (or null)
+     * @param inherited The definition of the superclass (or null)
+     * @param generator The generator of the accessors for the bean (or null)
+     */
+    public DeferredPropertyAccessor(String name, Class<?> type, Method reader, Method writer, BeanDefinitionImpl inherited, AccessorGenerator generator) {
+        super(name, type);
+        this.reader = reader;
+        this.writer = writer;
+        this.inherited = inherited;
+        this.generator = generator;
+        if( generator != null ) generator.add(this);
+    }
+    
+    /**
+     * Resolves the real accessor, the first time it is
+     * needed, and then returns the same accessor.
+     * 
+     * @return The accessor
+     */
+    public PropertyAccessor resolve() {
+        PropertyAccessor ret = accessor;
+        if( ret == null ) {
+            BeanDefinitionImpl superDefinition = inherited;
+            AccessorGenerator beanGenerator = generator;
+            if( superDefinition != null ) ret = superDefinition.getInheritedAccessor(this);
+            if( ret == null && beanGenerator != null ) ret = beanGenerator.getAccessor(this);
+            if( ret == null ) ret = new MethodPropertyAccessor(getName(), getType(), reader, writer);
+            accessor = ret;
+            inherited = null;
+            generator = null;
+        }
+        return ret;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Method getReadMethod() {
+        return reader;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Method getWriteMethod() {
+        return writer;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canRead() {
+        return reader != null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canWrite() {
+        return writer != null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(Object bean) {
+        return resolve().get(bean);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void set(Object bean, Object val) {
+        resolve().set(bean, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(Object bean) {
+        return resolve().getInt(bean);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setInt(Object bean, int val) {
+        resolve().setInt(bean, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong(Object bean) {
+        return resolve().getLong(bean);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLong(Object bean, long val) {
+        resolve().setLong(bean, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDouble(Object bean) {
+        return resolve().getDouble(bean);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDouble(Object bean, double val) {
+        resolve().setDouble(bean, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getBoolean(Object bean) {
+        return resolve().getBoolean(bean);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBoolean(Object bean, boolean val) {
+        resolve().setBoolean(bean, val);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasPrimitiveAccess() {
+        return resolve().hasPrimitiveAccess();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "DeferredPropertyAccessor [reader=" + reader + ", writer=" + writer + ", resolved=" + (accessor != null) + "]";
+    }
+}
@@ -0,0 +1,616 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.beans.Introspector;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.talframework.util.beans.BeanDefinition;
+
+/**
+ * This class is the actual cache of bean definitions used
+ * by the {@link BeanDefinitionsSingleton}. The entries are
+ * held against the class. When a definition does not exist 
+ * only one thread creates it, any other threads asking for
+ * the same class at the same time wait for that definition
+ * rather than introspecting the class themselves.
+ * 
+ * <p>The cache can optionally hold the classes weakly. In
+ * this mode the definitions of classes that do not belong
+ * to the classloader of this library (or its parents) are
+ * held softly. A definition refers to its class, so holding
+ * it strongly would stop those classes, and so their 
+ * classloader, from ever being unloaded, and without 
+ * ephemerons (Java 6) the definition cannot be tied to the
+ * lifetime of its class instead. Held softly the definition
+ * survives garbage collections while it is in use, and is
+ * only dropped once it has not been used for a while and
+ * memory is short, at which point the class is also removed
+ * from the caches of the {@link Introspector} so it can be
+ * unloaded. Invalidating the definitions of a classloader
+ * releases its classes straight away.</p>
+ * 
+ * <p>The cache can also optionally be bounded, in which case
+ * the oldest entries are evicted once the maximum size is
+ * reached. Hit, miss and eviction counts are only kept if
+ * statistics are requested so that the normal lookup path
+ * is not slowed down by them.</p>
+ * 
+ * <p>Entries can be invalidated by class, by classloader or
+ * all at once when classes are redefined or reloaded. This
+ * only removes them from the map, so lookups are never 
+ * blocked and definitions already handed out stay usable.</p>
+ *
+ * @author Tom Spencer
+ */
+final class DefinitionCache {
+    
+    /** Indicates if the classes are held weakly */
+    private final boolean weakKeys;
+    /** The maximum number of entries (0 = unbounded) */
+    private final int maximumSize;
+    /** Indicates if the hit/miss/eviction statistics are recorded */
+    private final boolean recordStatistics;
+    /** The profile to record created definitions in (or null) */
+    private final DefinitionProfile profile;
+    /** Indicates if the accessors of introspected properties are generated */
+    private final boolean generateAccessors;
+    
+    /** Holds the definition, a soft reference to it or the task creating it against the type */
+    private final ConcurrentHashMap<Object, Object> entries;
+    /** Holds the weak keys that have been cleared */
+    private final ReferenceQueue<Class<?>> clearedKeys;
+    /** Holds the soft references to definitions that have been cleared */
+    private final ReferenceQueue<BeanDefinition> clearedValues;
+    /** Holds the keys in the order they were added (only if bounded) */
+    private final ConcurrentLinkedQueue<Object> insertionOrder;
+    /** Holds the number of entries */
+    private final AtomicInteger size;
+    
+    /** The number of hits */
+    private final AtomicLong hits;
+    /** The number of misses */
+    private final AtomicLong misses;
+    /** The number of evictions */
+    private final AtomicLong evictions;
+    
+    /**
+     * Constructs the cache
+     * 
+     * @param weakKeys True if the classes should be held weakly
+     * @param maximumSize The maximum number of entries (0 is unbounded)
+     * @param recordStatistics True if statistics should be recorded
+     * @param profile The profile to record the types introspected in (or null)
+     */
+    public DefinitionCache(boolean weakKeys, int maximumSize, boolean recordStatistics, DefinitionProfile profile) {
+        this(weakKeys, maximumSize, recordStatistics, profile, false);
+    }
+    
+    /**
+     * Constructs the cache
+     * 
+     * @param weakKeys True if the classes should be held weakly
+     * @param maximumSize The maximum number of entries (0 is unbounded)
+     * @param recordStatistics True if statistics should be recorded
+     * @param profile The profile to record the types introspected in (or null)
+     * @param generateAccessors True if the accessors of introspected properties should be generated
+     */
+    public DefinitionCache(boolean weakKeys, int maximumSize, boolean recordStatistics, DefinitionProfile profile, boolean generateAccessors) {
+        if( maximumSize < 0 ) throw new IllegalArgumentException("The maximum size cannot be negative: " + maximumSize);
+        
+        this.weakKeys = weakKeys;
+        this.maximumSize = maximumSize;
+        this.recordStatistics = recordStatistics;
+        this.profile = profile;
+        this.generateAccessors = generateAccessors;
+        
+        this.entries = new ConcurrentHashMap<Object, Object>();
+        this.clearedKeys = weakKeys ? new ReferenceQueue<Class<?>>() : null;
+        this.clearedValues = weakKeys ? new ReferenceQueue<BeanDefinition>() : null;
+        this.insertionOrder = maximumSize > 0 ? new ConcurrentLinkedQueue<Object>() : null;
+        this.size = new AtomicInteger();
+        
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+    
+    /**
+     * Gets the definition for the type, creating it if
+     * it does not exist.
+     * 
+     * @param type The type we want the definition for
+     * @return The bean definition
+     */
+    public BeanDefinition get(Class<?> type) {
+        Object ret = entries.get(weakKeys ? new LookupKey(type) : type);
+        if( ret instanceof BeanDefinition ) {
+            if( recordStatistics ) hits.incrementAndGet();
+            return (BeanDefinition)ret;
+        }
+        else if( ret instanceof Reference<?> ) {
+            Object def = ((Reference<?>)ret).get();
+            if( def != null ) {
+                if( recordStatistics ) hits.incrementAndGet();
+                return (BeanDefinition)def;
+            }
+        }
+        
+        if( recordStatistics ) misses.incrementAndGet();
+        return create(type);
+    }
+    
+    /**
+     * Adds the definition to the cache replacing any
+     * existing definition for its type.
+     * 
+     * @param definition The definition to add
+     */
+    public void put(BeanDefinition definition) {
+        expungeClearedKeys();
+        
+        Object key = newKey(definition.getType());
+        if( entries.put(key, newValue(key, definition)) == null ) added(key);
+    }
+    
+    /**
+     * Removes the definition of the type and the definitions of
+     * all its subclasses, which share the accessors of the types
+     * definition. Each type removed is also removed from the 
+     * caches of the {@link Introspector} so the next lookup
+     * introspects it afresh. Lookups are not blocked, threads 
+     * already holding a definition carry on using it and the 
+     * next lookup creates a new one.
+     * 
+     * @param type The type to remove
+     * @return The number of definitions removed
+     */
+    public int invalidate(Class<?> type) {
+        return remove(type, null);
+    }
+    
+    /**
+     * Removes the definitions of all the types loaded by the
+     * classloader or any classloader below it.
+     * 
+     * @param loader The classloader
+     * @return The number of definitions removed
+     * @see #invalidate(Class)
+     */
+    public int invalidate(ClassLoader loader) {
+        return remove(null, loader);
+    }
+    
+    /**
+     * Removes all the definitions and clears the caches of 
+     * the {@link Introspector}.
+     * 
+     * @return The number of definitions removed
+     * @see #invalidate(Class)
+     */
+    public int invalidateAll() {
+        int ret = remove(null, null);
+        Introspector.flushCaches();
+        return ret;
+    }
+    
+    /**
+     * Copies all the complete definitions in this cache into
+     * another cache.
+     * 
+     * @param other The cache to copy into
+     */
+    public void copyTo(DefinitionCache other) {
+        for( Object val : entries.values() ) {
+            if( val instanceof Reference<?> ) val = ((Reference<?>)val).get();
+            if( val instanceof BeanDefinition ) other.put((BeanDefinition)val);
+        }
+    }
+    
+    /**
+     * @return The (approximate) number of entries
+     */
+    public int size() {
+        return size.get();
+    }
+    
+    /**
+     * @return The number of hits, if recording statistics
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    /**
+     * @return The number of misses, if recording statistics
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    /**
+     * @return The number of entries evicted, if recording statistics
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+    
+    /**
+     * Creates the definition, or waits for another thread that
+     * is already creating it.
+     * 
+     * @param type The type we want the definition for
+     * @return The bean definition
+     */
+    @SuppressWarnings("unchecked")
+    private BeanDefinition create(final Class<?> type) {
+        expungeClearedKeys();
+        
+        Object key = newKey(type);
+        FutureTask<BeanDefinition> task = new FutureTask<BeanDefinition>(new Callable<BeanDefinition>() {
+            public BeanDefinition call() throws Exception {
+                BeanDefinition ret = newDefinition(type);
+                if( profile != null ) profile.record(type);
+                return ret;
+            }
+        });
+        
+        FutureTask<BeanDefinition> future = null;
+        while( future == null ) {
+            Object current = entries.putIfAbsent(key, task);
+            if( current == null ) {
+                added(key);
+                future = task;
+                task.run();
+            }
+            else if( current instanceof FutureTask<?> ) {
+                future = (FutureTask<BeanDefinition>)current;
+            }
+            else {
+                Object def = current instanceof Reference<?> ? ((Reference<?>)current).get() : current;
+                if( def != null ) return (BeanDefinition)def;
+                if( entries.remove(key, current) ) removed(key);
+            }
+        }
+        
+        try {
+            BeanDefinition ret = future.get();
+            if( future == task ) entries.replace(key, task, newValue(key, ret));
+            return ret;
+        }
+        catch( ExecutionException e ) {
+            if( entries.remove(key, future) ) removed(key);
+            if( e.getCause() instanceof RuntimeException ) throw (RuntimeException)e.getCause();
+            if( e.getCause() instanceof Error ) throw (Error)e.getCause();
+            throw new IllegalArgumentException("Cannot create bean definition for bean: " + type, e.getCause());
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for bean definition for bean: " + type, e);
+        }
+    }
+    
+    /**
+     * Creates a new definition for the type. If the type is
+     * marked with {@link GenerateDefinition} then the generated
+     * definition is used if it exists, otherwise the type is
+     * introspected sharing the accessors of the properties it
+     * inherits from its superclass's definition. If the type is
+     * marked with {@link FieldAccess} its fields are included.
+     * The accessors are generated if the cache was configured 
+     * to generate them.
+     * 
+     * @param type The type we want the definition for
+     * @return The new bean definition
+     */
+    private BeanDefinition newDefinition(Class<?> type) {
+        if( type.isAnnotationPresent(GenerateDefinition.class) ) {
+            String name = type.getName().replace('$', '_') + GenerateDefinition.SUFFIX;
+            try {
+                Class<?> generated = Class.forName(name, true, type.getClassLoader());
+                return (BeanDefinition)generated.newInstance();
+            }
+            catch( ClassNotFoundException e ) {
+                // Definition was not generated, so introspect the bean instead
+            }
+            catch( InstantiationException e ) {
+                throw new IllegalArgumentException("Cannot create generated bean definition for bean: " + type, e);
+            }
+            catch( IllegalAccessException e ) {
+                throw new IllegalArgumentException("Cannot create generated bean definition for bean: " + type, e);
+            }
+        }
+        
+        boolean fieldAccess = type.isAnnotationPresent(FieldAccess.class);
+        Class<?> superclass = type.getSuperclass();
+        if( superclass == null || superclass == Object.class ) return new BeanDefinitionImpl(type, null, fieldAccess, generateAccessors);
+        return new BeanDefinitionImpl(type, get(superclass), fieldAccess, generateAccessors);
+    }
+    
+    /**
+     * Removes the type and its superclasses from the caches of
+     * the JavaBeans {@link Introspector}, which hold onto the
+     * classes strongly, if they do not belong to the classloader
+     * of this library. This is done once their definition has 
+     * been dropped so that the classes can be unloaded.
+     * 
+     * @param type The type introspected
+     */
+    private void flushIntrospector(Class<?> type) {
+        Class<?> current = type;
+        while( current != null && !isLocal(current) ) {
+            Introspector.flushFromCaches(current);
+            current = current.getSuperclass();
+        }
+    }
+    
+    /**
+     * Removes the entries for the type and its subclasses, for
+     * the types of the classloader, or all of them if neither
+     * is given. An entry that is still being created is also
+     * removed so the definition is not added once it is.
+     * 
+     * @param type The type to remove (or null)
+     * @param loader The classloader to remove the types of (or null)
+     * @return The number of entries removed
+     */
+    private int remove(Class<?> type, ClassLoader loader) {
+        expungeClearedKeys();
+        
+        int ret = 0;
+        for( Object key : entries.keySet() ) {
+            Class<?> keyType = key instanceof TypeKey ? ((TypeKey)key).getType() : (Class<?>)key;
+            if( keyType != null ) {
+                if( type != null && !isSubclass(keyType, type) ) continue;
+                if( loader != null && !isLoadedBy(keyType, loader) ) continue;
+            }
+            
+            if( entries.remove(key) != null ) {
+                removed(key);
+                if( keyType != null ) Introspector.flushFromCaches(keyType);
+                ++ret;
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * @return True if the type is the class or extends it
+     */
+    private static boolean isSubclass(Class<?> type, Class<?> superclass) {
+        Class<?> current = type;
+        while( current != null ) {
+            if( current == superclass ) return true;
+            current = current.getSuperclass();
+        }
+        return false;
+    }
+    
+    /**
+     * @return True if the type belongs to the classloader or one below it
+     */
+    private static boolean isLoadedBy(Class<?> type, ClassLoader loader) {
+        ClassLoader current = type.getClassLoader();
+        while( current != null ) {
+            if( current == loader ) return true;
+            current = current.getParent();
+        }
+        return false;
+    }
+    
+    /**
+     * Called when a new entry has been added to the map to
+     * evict the oldest entries if we are over the maximum.
+     * 
+     * @param key The key added
+     */
+    private void added(Object key) {
+        size.incrementAndGet();
+        if( insertionOrder == null ) return;
+        
+        insertionOrder.add(key);
+        while( size.get() > maximumSize ) {
+            Object oldest = insertionOrder.poll();
+            if( oldest == null ) break;
+            if( entries.remove(oldest) != null ) {
+                size.decrementAndGet();
+                if( recordStatistics ) evictions.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Called when an entry has been removed from the map, other
+     * than by eviction, to stop the key taking up a place in the
+     * eviction order.
+     * 
+     * @param key The key removed
+     */
+    private void removed(Object key) {
+        size.decrementAndGet();
+        if( insertionOrder != null ) insertionOrder.remove(key);
+    }
+    
+    /**
+     * Removes the entries of any classes that have been 
+     * garbage collected and of any definitions that have 
+     * been dropped.
+     */
+    private void expungeClearedKeys() {
+        if( clearedKeys == null ) return;
+        
+        Reference<? extends BeanDefinition> value = clearedValues.poll();
+        while( value != null ) {
+            ClassKey key = ((DefinitionReference)value).key;
+            if( entries.remove(key, value) ) removed(key);
+            Class<?> type = key.getType();
+            if( type != null ) flushIntrospector(type);
+            value = clearedValues.poll();
+        }
+        
+        Reference<? extends Class<?>> ref = clearedKeys.poll();
+        while( ref != null ) {
+            if( entries.remove(ref) != null ) removed(ref);
+            ref = clearedKeys.poll();
+        }
+    }
+    
+    /**
+     * @return The key to hold the type against in the map
+     */
+    private Object newKey(Class<?> type) {
+        return weakKeys ? new ClassKey(type, clearedKeys) : type;
+    }
+    
+    /**
+     * @return The value to hold the definition as in the map against the key
+     */
+    private Object newValue(Object key, BeanDefinition definition) {
+        if( weakKeys && !isLocal(definition.getType()) ) return new DefinitionReference(definition, (ClassKey)key, clearedValues);
+        return definition;
+    }
+    
+    /**
+     * Determines if the type belongs to the classloader of
+     * this class or one of its parents. Such classes cannot
+     * be unloaded before this cache is, so there is no need
+     * to hold their definitions weakly.
+     * 
+     * @param type The type
+     * @return True if the type is local, false otherwise
+     */
+    private boolean isLocal(Class<?> type) {
+        ClassLoader typeLoader = type.getClassLoader();
+        if( typeLoader == null ) return true;
+        
+        ClassLoader loader = DefinitionCache.class.getClassLoader();
+        while( loader != null ) {
+            if( loader == typeLoader ) return true;
+            loader = loader.getParent();
+        }
+        
+        return false;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "DefinitionCache [weakKeys=" + weakKeys + ", maximumSize=" + maximumSize + ", generateAccessors=" + generateAccessors + ", size=" + size + "]";
+    }
+    
+    /**
+     * Common interface for the keys in the map when
+     * holding the classes weakly.
+     */
+    private static interface TypeKey {
+        /**
+         * @return The type (or null if it has been collected)
+         */
+        public Class<?> getType();
+    }
+    
+    /**
+     * The key held in the map when holding classes weakly.
+     * Keys are equal if they refer to the same class.
+     */
+    private static final class ClassKey extends WeakReference<Class<?>> implements TypeKey {
+        private final int hash;
+        
+        public ClassKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+            super(type, queue);
+            this.hash = System.identityHashCode(type);
+        }
+        
+        public Class<?> getType() {
+            return get();
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if( obj == this ) return true;
+            if( !(obj instanceof TypeKey) ) return false;
+            Class<?> type = get();
+            return type != null && type == ((TypeKey)obj).getType();
+        }
+    }
+    
+    /**
+     * The value held in the map for the definitions of classes
+     * that do not belong to the classloader of this library
+     * when holding classes weakly. It refers back to its key
+     * so the entry can be removed once it is cleared.
+     */
+    private static final class DefinitionReference extends SoftReference<BeanDefinition> {
+        private final ClassKey key;
+        
+        public DefinitionReference(BeanDefinition definition, ClassKey key, ReferenceQueue<BeanDefinition> queue) {
+            super(definition, queue);
+            this.key = key;
+        }
+    }
+    
+    /**
+     * The key used to lookup the map when holding classes
+     * weakly so that no reference needs to be created.
+     */
+    private static final class LookupKey implements TypeKey {
+        private final Class<?> type;
+        
+        public LookupKey(Class<?> type) {
+            this.type = type;
+        }
+        
+        public Class<?> getType() {
+            return type;
+        }
+        
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(type);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if( obj == this ) return true;
+            if( !(obj instanceof TypeKey) ) return false;
+            return type == ((TypeKey)obj).getType();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.talframework.tal.aspects.annotations.TraceWarn;
+
+/**
+ * This class records the classes that have definitions
+ * created for them and writes these out to a file. This
+ * file can then be replayed when the application next 
+ * starts so the definitions are created in the background
+ * before they are first needed.
+ * 
+ * <p>The file simply contains the name of each class on
+ * its own line. Blank lines and lines starting with '#' 
+ * are ignored, so the file can be edited by hand.</p>
+ *
+ * @author Tom Spencer
+ */
+final class DefinitionProfile {
+    
+    /** The file the profile is written to */
+    private final File file;
+    /** The names of the classes recorded */
+    private final Set<String> classNames;
+    
+    /**
+     * Constructs the profile
+     * 
+     * @param file The file to write the profile to
+     */
+    public DefinitionProfile(File file) {
+        this.file = file;
+        this.classNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+    
+    /**
+     * @return The file the profile is written to
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Records that a definition has been created for the type
+     * 
+     * @param type The type
+     */
+    public void record(Class<?> type) {
+        classNames.add(type.getName());
+    }
+    
+    /**
+     * Writes the recorded class names out to the file
+     */
+    public void write() {
+        Set<String> names = new TreeSet<String>(classNames);
+        
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                out.println("# Classes bean definitions were created for");
+                for( String name : names ) out.println(name);
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch( IOException e ) {
+            cannotWriteProfile(file, e);
+        }
+    }
+    
+    /**
+     * Reads the class names from a profile file
+     * 
+     * @param file The file to read
+     * @return The names of the classes in the profile
+     */
+    public static List<String> read(File file) {
+        List<String> ret = new ArrayList<String>();
+        
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line = in.readLine();
+                while( line != null ) {
+                    line = line.trim();
+                    if( line.length() > 0 && !line.startsWith("#") ) ret.add(line);
+                    line = in.readLine();
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch( IOException e ) {
+            throw new IllegalArgumentException("Unable to read bean definition profile: " + file, e);
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * Method is present to call so the aspect loggers can log it.
+     */
+    @TraceWarn
+    private void cannotWriteProfile(File file, IOException e) {
+    }
+}
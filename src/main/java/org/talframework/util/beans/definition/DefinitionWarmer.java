@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.talframework.tal.aspects.annotations.TraceWarn;
+
+/**
+ * This class warms up the {@link BeanDefinitionsSingleton}
+ * by creating the definitions for a set of classes up 
+ * front. The definitions are created in parallel across
+ * a pool of threads. Classes can be given directly or found
+ * by scanning the packages they are in.
+ * 
+ * <p>Any class that fails to be defined is ignored, as it
+ * would be when it is first asked for, so that the warm up
+ * never stops the application from starting.</p>
+ *
+ * @author Tom Spencer
+ */
+final class DefinitionWarmer {
+    
+    /** The singleton to create the definitions in */
+    private final BeanDefinitionsSingleton singleton;
+    /** The number of threads to use */
+    private final int threads;
+    
+    /**
+     * Constructs the warmer
+     * 
+     * @param singleton The singleton to create the definitions in
+     * @param threads The number of threads to use
+     */
+    public DefinitionWarmer(BeanDefinitionsSingleton singleton, int threads) {
+        this.singleton = singleton;
+        this.threads = threads > 0 ? threads : 1;
+    }
+
+    /**
+     * Creates the definitions for all the given classes,
+     * returning once they have all been created.
+     * 
+     * @param types The classes to create definitions for
+     * @return The number of definitions created
+     */
+    public int warmUp(Collection<Class<?>> types) {
+        if( types == null || types.size() == 0 ) return 0;
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, types.size()), new WarmUpThreadFactory());
+        try {
+            List<Future<Class<?>>> results = new ArrayList<Future<Class<?>>>(types.size());
+            for( final Class<?> type : types ) {
+                results.add(executor.submit(new Callable<Class<?>>() {
+                    public Class<?> call() throws Exception {
+                        singleton.getDefinition(type);
+                        return type;
+                    }
+                }));
+            }
+            
+            int ret = 0;
+            for( Future<Class<?>> result : results ) {
+                try {
+                    result.get();
+                    ++ret;
+                }
+                catch( ExecutionException e ) {
+                    cannotWarmUp(e.getCause());
+                }
+            }
+            
+            return ret;
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted warming up bean definitions", e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Finds all the classes in the given packages, including
+     * their sub-packages.
+     * 
+     * @param loader The classloader to find and load the classes with
+     * @param packageNames The packages
+     * @return The classes found
+     */
+    public Collection<Class<?>> findClasses(ClassLoader loader, String... packageNames) {
+        Set<String> classNames = new LinkedHashSet<String>();
+        for( String packageName : packageNames ) {
+            String path = packageName.replace('.', '/');
+            try {
+                Enumeration<URL> urls = loader.getResources(path);
+                while( urls.hasMoreElements() ) {
+                    findClassNames(urls.nextElement(), path, classNames);
+                }
+            }
+            catch( IOException e ) {
+                throw new IllegalArgumentException("Unable to scan package for classes: " + packageName, e);
+            }
+        }
+        
+        List<Class<?>> ret = new ArrayList<Class<?>>(classNames.size());
+        for( String className : classNames ) {
+            try {
+                Class<?> type = Class.forName(className, false, loader);
+                if( !type.isAnonymousClass() && !type.isSynthetic() && !type.isAnnotation() ) ret.add(type);
+            }
+            catch( ClassNotFoundException e ) {
+                cannotWarmUp(e);
+            }
+            catch( LinkageError e ) {
+                cannotWarmUp(e);
+            }
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * Helper to add the names of the classes at the given
+     * location to the set.
+     * 
+     * @param url The URL of the package in either a directory or a jar
+     * @param path The path of the package
+     * @param classNames The set to add the names to
+     */
+    private void findClassNames(URL url, String path, Set<String> classNames) throws IOException {
+        if( "file".equals(url.getProtocol()) ) {
+            // The URI decodes escapes only, a '+' in the path is not a space
+            File dir = null;
+            try {
+                dir = new File(url.toURI());
+            }
+            catch( URISyntaxException e ) {
+                throw new IOException("The location of the package is not a valid URI: " + url, e);
+            }
+            findClassNames(dir, path, classNames);
+        }
+        else {
+            URLConnection connection = url.openConnection();
+            if( !(connection instanceof JarURLConnection) ) return;
+            
+            JarFile jar = ((JarURLConnection)connection).getJarFile();
+            Enumeration<JarEntry> entries = jar.entries();
+            while( entries.hasMoreElements() ) {
+                String name = entries.nextElement().getName();
+                if( name.startsWith(path + "/") ) addClassName(name, classNames);
+            }
+        }
+    }
+    
+    /**
+     * Helper to add the names of the classes in the directory
+     * and its sub-directories to the set.
+     * 
+     * @param dir The directory
+     * @param path The path of the package the directory represents
+     * @param classNames The set to add the names to
+     */
+    private void findClassNames(File dir, String path, Set<String> classNames) {
+        File[] files = dir.listFiles();
+        if( files == null ) return;
+        
+        for( File file : files ) {
+            if( file.isDirectory() ) findClassNames(file, path + "/" + file.getName(), classNames);
+            else addClassName(path + "/" + file.getName(), classNames);
+        }
+    }
+    
+    /**
+     * Helper to add the class name to the set if the file is
+     * a class file other than a package-info.
+     * 
+     * @param fileName The name of the file including its path
+     * @param classNames The set to add the name to
+     */
+    private void addClassName(String fileName, Set<String> classNames) {
+        if( !fileName.endsWith(".class") || fileName.endsWith("package-info.class") ) return;
+        classNames.add(fileName.substring(0, fileName.length() - 6).replace('/', '.'));
+    }
+    
+    /**
+     * Method is present to call so the aspect loggers can log it.
+     */
+    @TraceWarn
+    private void cannotWarmUp(Throwable cause) {
+    }
+    
+    /**
+     * Creates the daemon threads for the warm up so they
+     * never hold up the JVM.
+     */
+    private static final class WarmUpThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable r) {
+            Thread ret = new Thread(r, "BeanDefinitionWarmUp");
+            ret.setDaemon(true);
+            return ret;
+        }
+    }
+}
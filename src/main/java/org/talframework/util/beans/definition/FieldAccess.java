@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation marks a bean class whose fields should be
+ * treated as properties as well as its getters and setters.
+ * Every non-private, non-static and non-transient field of
+ * the class (or its superclasses) becomes a property, unless
+ * there is already a property of that name with a getter or
+ * setter. These properties are read and written directly
+ * through the field, final fields are read only.
+ * 
+ * <p>The {@link BeanDefinitionsSingleton} honours this 
+ * annotation when it creates the definition. A definition
+ * using fields can also be created for any class using the
+ * {@link BeanDefinitionImpl#BeanDefinitionImpl(Class, BeanDefinition, boolean)} 
+ * constructor and then registered.</p>
+ *
+ * @author Tom Spencer
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface FieldAccess {
+}
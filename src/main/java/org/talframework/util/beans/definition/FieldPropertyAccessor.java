@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * This {@link PropertyAccessor} reads and writes a field of
+ * the bean directly. The field is made accessible once, when
+ * the accessor is created, and primitive fields are read and
+ * written without boxing.
+ *
+ * @author Tom Spencer
+ */
+final class FieldPropertyAccessor extends PropertyAccessor {
+    
+    /** The field */
+    private final Field field;
+    /** Indicates if the field can be written (it is not final) */
+    private final boolean writable;
+    
+    /**
+     * Constructs the accessor
+     * 
+     * @param field The field
+     */
+    public FieldPropertyAccessor(Field field) {
+        super(field.getName(), field.getType());
+        this.field = field;
+        this.writable = !Modifier.isFinal(field.getModifiers());
+        
+        if( !field.isAccessible() ) {
+            try {
+                field.setAccessible(true);
+            }
+            catch( SecurityException e ) {
+                // Access checks will be performed on each call instead
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Field getField() {
+        return field;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canWrite() {
+        return writable;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(Object bean) {
+        try {
+            return field.get(bean);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotRead(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void set(Object bean, Object val) {
+        checkWritable();
+        try {
+            field.set(bean, val);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotWrite(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(Object bean) {
+        if( getType() != int.class ) return super.getInt(bean);
+        try {
+            return field.getInt(bean);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotRead(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setInt(Object bean, int val) {
+        if( getType() != int.class ) {
+            super.setInt(bean, val);
+            return;
+        }
+        
+        checkWritable();
+        try {
+            field.setInt(bean, val);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotWrite(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong(Object bean) {
+        if( getType() != long.class ) return super.getLong(bean);
+        try {
+            return field.getLong(bean);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotRead(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLong(Object bean, long val) {
+        if( getType() != long.class ) {
+            super.setLong(bean, val);
+            return;
+        }
+        
+        checkWritable();
+        try {
+            field.setLong(bean, val);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotWrite(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDouble(Object bean) {
+        if( getType() != double.class ) return super.getDouble(bean);
+        try {
+            return field.getDouble(bean);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotRead(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDouble(Object bean, double val) {
+        if( getType() != double.class ) {
+            super.setDouble(bean, val);
+            return;
+        }
+        
+        checkWritable();
+        try {
+            field.setDouble(bean, val);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotWrite(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getBoolean(Object bean) {
+        if( getType() != boolean.class ) return super.getBoolean(bean);
+        try {
+            return field.getBoolean(bean);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotRead(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBoolean(Object bean, boolean val) {
+        if( getType() != boolean.class ) {
+            super.setBoolean(bean, val);
+            return;
+        }
+        
+        checkWritable();
+        try {
+            field.setBoolean(bean, val);
+        }
+        catch( IllegalAccessException e ) {
+            throw cannotWrite(e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasPrimitiveAccess() {
+        Class<?> type = getType();
+        return type == int.class || type == long.class || type == double.class || type == boolean.class;
+    }
+    
+    /**
+     * Helper to ensure the field is not final
+     */
+    private void checkWritable() {
+        if( !writable ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as the field is final");
+    }
+    
+    /**
+     * @return The exception to throw when the field cannot be read
+     */
+    private RuntimeException cannotRead(IllegalAccessException e) {
+        return new RuntimeException("Cannot read property [" + getName() + "] due to caught exception: " + field.getDeclaringClass(), e);
+    }
+    
+    /**
+     * @return The exception to throw when the field cannot be written
+     */
+    private RuntimeException cannotWrite(IllegalAccessException e) {
+        return new RuntimeException("Cannot write property [" + getName() + "] due to caught exception: " + field.getDeclaringClass(), e);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "FieldPropertyAccessor [field=" + field + "]";
+    }
+}
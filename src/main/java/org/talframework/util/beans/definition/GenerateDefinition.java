@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation marks a bean class for which a 
+ * {@link org.talframework.util.beans.BeanDefinition} should 
+ * be generated at compile time. The generated definition 
+ * reads and writes the properties by calling the getters
+ * and setters directly and so does not need to introspect 
+ * the class when it is created.
+ * 
+ * <p>The definition is generated into the same package as
+ * the bean and is named after the bean with any '$' 
+ * replaced by '_' and {@link #SUFFIX} appended. The 
+ * {@link BeanDefinitionsSingleton} uses the generated 
+ * definition when it is first asked for the bean's 
+ * definition, or the generated class can be registered 
+ * up front by calling its static register method.</p>
+ *
+ * @author Tom Spencer
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateDefinition {
+    
+    /** The suffix added to the bean class name to form the name of the generated definition */
+    public static final String SUFFIX = "_BeanDefinition";
+}
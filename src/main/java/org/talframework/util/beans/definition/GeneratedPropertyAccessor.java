@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.Method;
+
+/**
+ * This is the base class of the {@link PropertyAccessor}s that
+ * are generated at runtime for introspected properties, see 
+ * {@link BeanDefinitionsSingleton#setGenerateAccessors(boolean)}.
+ * The generated class only has to implement the get and set
+ * methods by calling the getter and setter of the bean. It
+ * must be public as the generated classes are loaded in a 
+ * classloader of their own.
+ *
+ * @author Tom Spencer
+ */
+public abstract class GeneratedPropertyAccessor extends PropertyAccessor {
+    
+    /** The getter (or null) */
+    private final Method reader;
+    /** The setter (or null) */
+    private final Method writer;
+    
+    /**
+     * Constructs the accessor
+     * 
+     * @param name The name of the property
+     * @param type The type of the property
+     * @param reader The getter (or null)
+     * @param writer The setter (or null)
+     */
+    protected GeneratedPropertyAccessor(String name, Class<?> type, Method reader, Method writer) {
+        super(name, type);
+        this.reader = reader;
+        this.writer = writer;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Method getReadMethod() {
+        return reader;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Method getWriteMethod() {
+        return writer;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canRead() {
+        return reader != null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canWrite() {
+        return writer != null;
+    }
+    
+    /**
+     * Helper for the generated accessors when the property
+     * cannot be read.
+     * 
+     * @return Never returns
+     * @throws IllegalArgumentException Always
+     */
+    protected final IllegalArgumentException cannotRead() {
+        throw new IllegalArgumentException("Cannot read property [" + getName() + "] as no accessor exists");
+    }
+    
+    /**
+     * Helper for the generated accessors when the property
+     * cannot be written, either because there is no setter
+     * or the value is not of the right type.
+     * 
+     * @param val The value being written
+     * @return Never returns
+     * @throws IllegalArgumentException Always
+     */
+    protected final IllegalArgumentException cannotWrite(Object val) {
+        if( writer == null ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as no mutator exists");
+        throw new IllegalArgumentException("Cannot write value [" + val + "] to property [" + getName() + "] of type: " + getType());
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " [reader=" + reader + ", writer=" + writer + "]";
+    }
+}
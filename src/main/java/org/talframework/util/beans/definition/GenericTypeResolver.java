@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class resolves generic types against a concrete bean
+ * class, so that a property declared as List&lt;T&gt; in a 
+ * generic superclass has the actual type argument given 
+ * for T by the subclass. The type variables of the bean are
+ * collected once and the resolver is then used for each of
+ * its properties.
+ *
+ * @author Tom Spencer
+ */
+final class GenericTypeResolver {
+    /** Guard against type variables that resolve to each other */
+    private static final int MAX_DEPTH = 32;
+    
+    /** Holds the type arguments of the bean class against the variables */
+    private final Map<TypeVariable<?>, Type> variables;
+    
+    /**
+     * Constructs the resolver collecting all the type
+     * arguments given in the class hierarchy of the bean
+     * 
+     * @param beanType The concrete bean class
+     */
+    public GenericTypeResolver(Class<?> beanType) {
+        this.variables = new HashMap<TypeVariable<?>, Type>();
+        collect(beanType, variables);
+    }
+    
+    /**
+     * Resolves the type to a class
+     * 
+     * @param type The type to resolve
+     * @return The class or null if it cannot be determined
+     */
+    public Class<?> resolve(Type type) {
+        return resolve(type, variables, 0);
+    }
+    
+    /**
+     * Resolves the type argument the given type passes to a
+     * generic supertype, i.e. the element type of a List 
+     * (target Collection, argument 0) or value type of a
+     * Map (target Map, argument 1).
+     * 
+     * @param type The type (i.e. the generic type of a property)
+     * @param target The generic supertype
+     * @param arg The index of the type argument in target
+     * @return The class or null if it cannot be determined
+     */
+    public Class<?> resolveArgument(Type type, Class<?> target, int arg) {
+        Map<TypeVariable<?>, Type> vars = new HashMap<TypeVariable<?>, Type>(variables);
+        collect(type, vars);
+        return resolve(target.getTypeParameters()[arg], vars, 0);
+    }
+    
+    /**
+     * Resolves the component type of an array type
+     * 
+     * @param type The array type
+     * @return The component class or null if not an array
+     */
+    public Class<?> resolveComponent(Type type) {
+        if( type instanceof GenericArrayType ) return resolve(((GenericArrayType)type).getGenericComponentType());
+        else if( type instanceof Class<?> && ((Class<?>)type).isArray() ) return ((Class<?>)type).getComponentType();
+        else return null;
+    }
+    
+    /**
+     * Internal helper to collect the type arguments given
+     * to each type variable in the hierarchy of the type
+     * 
+     * @param type The type
+     * @param vars The map to collect into
+     */
+    private static void collect(Type type, Map<TypeVariable<?>, Type> vars) {
+        Class<?> raw = null;
+        if( type instanceof ParameterizedType ) {
+            ParameterizedType parameterized = (ParameterizedType)type;
+            if( !(parameterized.getRawType() instanceof Class<?>) ) return;
+            
+            raw = (Class<?>)parameterized.getRawType();
+            TypeVariable<?>[] params = raw.getTypeParameters();
+            Type[] args = parameterized.getActualTypeArguments();
+            for( int i = 0 ; i < params.length && i < args.length ; i++ ) {
+                if( !vars.containsKey(params[i]) ) vars.put(params[i], args[i]);
+            }
+        }
+        else if( type instanceof Class<?> ) {
+            raw = (Class<?>)type;
+        }
+        else {
+            return;
+        }
+        
+        if( raw.getGenericSuperclass() != null ) collect(raw.getGenericSuperclass(), vars);
+        for( Type iface : raw.getGenericInterfaces() ) collect(iface, vars);
+    }
+    
+    /**
+     * Internal helper to resolve a type to a class
+     * 
+     * @param type The type
+     * @param vars The known type arguments
+     * @param depth The depth of recursion
+     * @return The class or null if it cannot be determined
+     */
+    private static Class<?> resolve(Type type, Map<TypeVariable<?>, Type> vars, int depth) {
+        if( depth > MAX_DEPTH ) return null;
+        
+        if( type instanceof Class<?> ) {
+            return (Class<?>)type;
+        }
+        else if( type instanceof ParameterizedType ) {
+            return resolve(((ParameterizedType)type).getRawType(), vars, depth + 1);
+        }
+        else if( type instanceof GenericArrayType ) {
+            Class<?> component = resolve(((GenericArrayType)type).getGenericComponentType(), vars, depth + 1);
+            return component != null ? Array.newInstance(component, 0).getClass() : null;
+        }
+        else if( type instanceof WildcardType ) {
+            Type[] bounds = ((WildcardType)type).getUpperBounds();
+            return bounds.length > 0 ? resolveBound(bounds[0], vars, depth) : null;
+        }
+        else if( type instanceof TypeVariable<?> ) {
+            Type arg = vars.get(type);
+            if( arg != null && arg != type ) return resolve(arg, vars, depth + 1);
+            
+            Type[] bounds = ((TypeVariable<?>)type).getBounds();
+            return bounds.length > 0 ? resolveBound(bounds[0], vars, depth) : null;
+        }
+        else {
+            return null;
+        }
+    }
+    
+    /**
+     * Internal helper to resolve the bound of an unknown type,
+     * a bound of Object tells us nothing so is null
+     */
+    private static Class<?> resolveBound(Type bound, Map<TypeVariable<?>, Type> vars, int depth) {
+        Class<?> ret = resolve(bound, vars, depth + 1);
+        return ret == Object.class ? null : ret;
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.InterfaceAdaptor;
+import org.talframework.util.beans.PropertyHandle;
+
+/**
+ * This class creates new instances of a bean using the
+ * constructor that is resolved and made accessible once, 
+ * when the instantiator is created. Only public constructors
+ * are used, so types that hide their constructors, such as
+ * singletons, cannot be created. For interfaces the
+ * constructor of the proxy class is held so that the proxy
+ * class is not looked up on each instance created.
+ * 
+ * <p>An instantiator can also be resolved for a constructor
+ * marked with {@link ConstructorProperties}, in which case
+ * the instance is created in one call from the values of
+ * the properties. Which property is passed as each parameter
+ * is worked out once, when the instantiator is created.</p>
+ *
+ * @author Tom Spencer
+ */
+final class Instantiator {
+    /** Shared empty argument array for the no-arg constructor */
+    private static final Object[] NO_ARGS = new Object[0];
+    /** Instantiator used to indicate there is no constructor taking properties */
+    static final Instantiator NONE = new Instantiator(null, null, false, null, Collections.<String>emptyList());
+    
+    /** The type being created */
+    private final Class<?> type;
+    /** The constructor to use */
+    private final Constructor<?> constructor;
+    /** Indicates if the constructor is of a proxy (taking the invocation handler) */
+    private final boolean proxy;
+    /** The index of the property passed as each parameter (or null if no-arg) */
+    private final int[] propertyIndexes;
+    /** The type of each parameter */
+    private final Class<?>[] parameterTypes;
+    /** The names of the properties passed as each parameter */
+    private final List<String> properties;
+    
+    /**
+     * Constructs the instantiator
+     * 
+     * @param type The type being created
+     * @param constructor The constructor to use
+     * @param proxy True if the constructor is of a proxy class
+     * @param propertyIndexes The index of the property passed as each parameter (or null)
+     * @param properties The names of the properties passed as each parameter
+     */
+    private Instantiator(Class<?> type, Constructor<?> constructor, boolean proxy, int[] propertyIndexes, List<String> properties) {
+        this.type = type;
+        this.constructor = constructor;
+        this.proxy = proxy;
+        this.propertyIndexes = propertyIndexes;
+        this.parameterTypes = propertyIndexes != null ? constructor.getParameterTypes() : null;
+        this.properties = properties;
+    }
+    
+    /**
+     * Resolves the instantiator for the given type. The proxy
+     * class for an interface is created in the interfaces own
+     * classloader, or the context classloader if it is a
+     * system interface.
+     * 
+     * @param type The type to create instances of
+     * @return The instantiator
+     * @throws RuntimeException If the type cannot be created 
+     */
+    public static Instantiator forType(Class<?> type) {
+        try {
+            if( type.isInterface() ) {
+                ClassLoader loader = type.getClassLoader();
+                if( loader == null ) loader = Thread.currentThread().getContextClassLoader();
+                Class<?> proxyClass = Proxy.getProxyClass(loader, type);
+                return new Instantiator(type, makeAccessible(proxyClass.getConstructor(InvocationHandler.class)), true, null, Collections.<String>emptyList());
+            }
+            else if( Modifier.isAbstract(type.getModifiers()) || type.isPrimitive() || type.isArray() ) {
+                throw new RuntimeException("Cannot create instance of bean as it is not a concrete class: " + type);
+            }
+            else {
+                return new Instantiator(type, makeAccessible(type.getConstructor()), false, null, Collections.<String>emptyList());
+            }
+        }
+        catch( NoSuchMethodException e ) {
+            throw new RuntimeException("Cannot create instance of bean as it has no public default constructor: " + type, e);
+        }
+    }
+    
+    /**
+     * Resolves the instantiator for the public constructor of the
+     * type that is marked with {@link ConstructorProperties}, where
+     * every parameter is a property of the bean. If there is
+     * more than one such constructor the one taking the most
+     * properties is used.
+     * 
+     * @param type The type to create instances of
+     * @param definition The definition of the type
+     * @return The instantiator or {@link #NONE} if there is no such constructor
+     */
+    public static Instantiator forConstructor(Class<?> type, BeanDefinition definition) {
+        if( type.isInterface() || Modifier.isAbstract(type.getModifiers()) ) return NONE;
+        
+        Constructor<?> best = null;
+        String[] bestNames = null;
+        for( Constructor<?> constructor : type.getConstructors() ) {
+            ConstructorProperties props = constructor.getAnnotation(ConstructorProperties.class);
+            if( props == null || props.value().length != constructor.getParameterTypes().length ) continue;
+            if( best != null && props.value().length <= bestNames.length ) continue;
+            
+            boolean allProperties = true;
+            for( String name : props.value() ) {
+                if( definition.getPropertyHandle(name) == null ) allProperties = false;
+            }
+            
+            if( allProperties ) {
+                best = constructor;
+                bestNames = props.value();
+            }
+        }
+        if( best == null ) return NONE;
+        
+        int[] indexes = new int[bestNames.length];
+        for( int i = 0 ; i < bestNames.length ; i++ ) {
+            PropertyHandle handle = definition.getPropertyHandle(bestNames[i]);
+            indexes[i] = handle.getIndex();
+        }
+        return new Instantiator(type, makeAccessible(best), false, indexes, Collections.unmodifiableList(Arrays.asList(bestNames)));
+    }
+    
+    /**
+     * @return The names of the properties passed to the constructor (empty if none)
+     */
+    public List<String> getProperties() {
+        return properties;
+    }
+    
+    /**
+     * @return The type created
+     */
+    public Class<?> getType() {
+        return type;
+    }
+    
+    /**
+     * @return A new instance of the bean
+     */
+    public Object newInstance() {
+        if( proxy ) return create(new Object[]{new InterfaceAdaptor()});
+        else return create(NO_ARGS);
+    }
+    
+    /**
+     * Creates a new instance passing the values of the properties
+     * to the constructor. If a primitive property has no value 
+     * its default value is passed.
+     * 
+     * @param values The value of each property by its index
+     * @return A new instance of the bean
+     */
+    public Object newInstance(Object[] values) {
+        if( propertyIndexes == null ) return newInstance();
+        
+        Object[] args = new Object[propertyIndexes.length];
+        for( int i = 0 ; i < args.length ; i++ ) {
+            Object val = values != null ? values[propertyIndexes[i]] : null;
+            if( val == null && parameterTypes[i].isPrimitive() ) val = defaultValue(parameterTypes[i]);
+            args[i] = val;
+        }
+        return create(args);
+    }
+    
+    /**
+     * Internal helper to call the constructor
+     * 
+     * @param args The arguments to the constructor
+     * @return The new instance
+     */
+    private Object create(Object[] args) {
+        if( constructor == null ) throw new IllegalStateException("No constructor has been resolved");
+        
+        try {
+            return constructor.newInstance(args);
+        }
+        catch( InvocationTargetException e ) {
+            if( e.getCause() instanceof RuntimeException ) throw (RuntimeException)e.getCause();
+            if( e.getCause() instanceof Error ) throw (Error)e.getCause();
+            throw new RuntimeException("Cannot create instance of bean: " + type, e.getCause());
+        }
+        catch( InstantiationException e ) {
+            throw new RuntimeException("Cannot create instance of bean: " + type, e);
+        }
+        catch( IllegalAccessException e ) {
+            throw new RuntimeException("Cannot create instance of bean: " + type, e);
+        }
+    }
+    
+    /**
+     * Helper to get the default value of a primitive
+     * 
+     * @param type The primitive type
+     * @return Its default value
+     */
+    private static Object defaultValue(Class<?> type) {
+        if( type == int.class ) return Integer.valueOf(0);
+        else if( type == long.class ) return Long.valueOf(0);
+        else if( type == boolean.class ) return Boolean.FALSE;
+        else if( type == double.class ) return Double.valueOf(0);
+        else if( type == short.class ) return Short.valueOf((short)0);
+        else if( type == char.class ) return Character.valueOf((char)0);
+        else if( type == byte.class ) return Byte.valueOf((byte)0);
+        else if( type == float.class ) return Float.valueOf(0);
+        else return null;
+    }
+    
+    /**
+     * Helper to turn off the access checks on the (public)
+     * constructor so they are not made on each instance created.
+     * If this is not permitted the constructor is used as is.
+     * 
+     * @param constructor The constructor
+     * @return The constructor
+     */
+    private static Constructor<?> makeAccessible(Constructor<?> constructor) {
+        if( !constructor.isAccessible() ) {
+            try {
+                constructor.setAccessible(true);
+            }
+            catch( SecurityException e ) {
+                // Access checks will be performed on each call instead
+            }
+        }
+        
+        return constructor;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Instantiator [constructor=" + constructor + "]";
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * This {@link PropertyAccessor} uses the getter and setter
+ * methods reflectively. The methods are made accessible once,
+ * when the accessor is created, so that each call avoids the
+ * access checks. Accessors that call the methods directly can
+ * be generated instead, see {@link AccessorGenerator}.
+ *
+ * @author Tom Spencer
+ */
+final class MethodPropertyAccessor extends PropertyAccessor {
+    /** The getter (or null) */
+    private final Method reader;
+    /** The setter (or null) */
+    private final Method writer;
+    
+    /**
+     * Constructs the accessor
+     * 
+     * @param name The name of the property
+     * @param type The type of the property
+     * @param reader The getter (or null)
+     * @param writer The setter (or null)
+     */
+    public MethodPropertyAccessor(String name, Class<?> type, Method reader, Method writer) {
+        super(name, type);
+        this.reader = makeAccessible(reader);
+        this.writer = makeAccessible(writer);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Method getReadMethod() {
+        return reader;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Method getWriteMethod() {
+        return writer;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canRead() {
+        return reader != null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canWrite() {
+        return writer != null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(Object bean) {
+        if( reader == null ) throw new IllegalArgumentException("Cannot read property [" + getName() + "] as no accessor exists");
+        
+        try {
+            return reader.invoke(bean, (Object[])null);
+        }
+        catch( InvocationTargetException e ) {
+            if( e.getCause() instanceof RuntimeException ) throw (RuntimeException)e.getCause();
+            throw new RuntimeException("Cannot read property [" + getName() + "] due to caught exception: " + reader.getDeclaringClass(), e.getCause());
+        }
+        catch( IllegalAccessException e ) {
+            throw new RuntimeException("Cannot read property [" + getName() + "] due to caught exception: " + reader.getDeclaringClass(), e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void set(Object bean, Object val) {
+        if( writer == null ) throw new IllegalArgumentException("Cannot write property [" + getName() + "] as no mutator exists");
+        
+        try {
+            writer.invoke(bean, val);
+        }
+        catch( InvocationTargetException e ) {
+            if( e.getCause() instanceof RuntimeException ) throw (RuntimeException)e.getCause();
+            throw new RuntimeException("Cannot write property [" + getName() + "] due to caught exception: " + writer.getDeclaringClass(), e.getCause());
+        }
+        catch( IllegalAccessException e ) {
+            throw new RuntimeException("Cannot write property [" + getName() + "] due to caught exception: " + writer.getDeclaringClass(), e);
+        }
+    }
+    
+    /**
+     * Helper to turn off the access checks on the method. If
+     * this is not permitted the method is used as is.
+     * 
+     * @param method The method (or null)
+     * @return The method
+     */
+    private static Method makeAccessible(Method method) {
+        if( method != null && !method.isAccessible() ) {
+            try {
+                method.setAccessible(true);
+            }
+            catch( SecurityException e ) {
+                // Access checks will be performed on each call instead
+            }
+        }
+        
+        return method;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "MethodPropertyAccessor [reader=" + reader + ", writer=" + writer + "]";
+    }
+}
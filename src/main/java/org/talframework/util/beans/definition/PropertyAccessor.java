@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * This class represents the means of reading and writing
+ * a single property of a bean. An accessor is created once
+ * for each property, for introspected properties the first
+ * time the property is used, and then used for every read 
+ * and write of that property. 
+ * 
+ * <p>The default accessors use reflection, but this class 
+ * is the extension point that allows accessors that call
+ * the getter and setter directly to be plugged in. Such
+ * accessors should also override the primitive get and set
+ * methods so primitive properties are not boxed.</p>
+ *
+ * @author Tom Spencer
+ */
+public abstract class PropertyAccessor {
+
+    /** The name of the property */
+    private final String name;
+    /** The type of the property */
+    private final Class<?> type;
+    
+    /**
+     * Constructs the accessor
+     * 
+     * @param name The name of the property
+     * @param type The type of the property
+     */
+    protected PropertyAccessor(String name, Class<?> type) {
+        this.name = name;
+        this.type = type;
+    }
+    
+    /**
+     * @return The name of the property
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return The type of the property
+     */
+    public Class<?> getType() {
+        return type;
+    }
+    
+    /**
+     * Returns the getter of the property. This is only
+     * used to obtain information about the property, such
+     * as its generic type and annotations, and not to
+     * read the property.
+     * 
+     * @return The getter (or null)
+     */
+    public Method getReadMethod() {
+        return null;
+    }
+    
+    /**
+     * Returns the setter of the property. This is only
+     * used to obtain information about the property, such
+     * as its generic type and annotations, and not to
+     * write the property.
+     * 
+     * @return The setter (or null)
+     */
+    public Method getWriteMethod() {
+        return null;
+    }
+    
+    /**
+     * Returns the field of the property if it is accessed
+     * directly. Like the methods this is only used to obtain
+     * information about the property.
+     * 
+     * @return The field (or null)
+     */
+    public Field getField() {
+        return null;
+    }
+    
+    /**
+     * @return True if the property can be read
+     */
+    public abstract boolean canRead();
+    
+    /**
+     * @return True if the property can be written
+     */
+    public abstract boolean canWrite();
+    
+    /**
+     * Reads the property value from the bean
+     * 
+     * @param bean The bean to read from
+     * @return The value
+     * @throws IllegalArgumentException If the property cannot be read
+     */
+    public abstract Object get(Object bean);
+    
+    /**
+     * Writes the property value to the bean
+     * 
+     * @param bean The bean to write to
+     * @param val The value to write
+     * @throws IllegalArgumentException If the property cannot be written
+     */
+    public abstract void set(Object bean, Object val);
+    
+    /**
+     * Reads the value of a int property. Accessors that can
+     * read the property without boxing should override this.
+     * 
+     * @param bean The bean to read from
+     * @return The value
+     */
+    public int getInt(Object bean) {
+        return ((Integer)get(bean)).intValue();
+    }
+    
+    /**
+     * Writes the value of a int property. Accessors that can
+     * write the property without boxing should override this.
+     * 
+     * @param bean The bean to write to
+     * @param val The value to write
+     */
+    public void setInt(Object bean, int val) {
+        set(bean, Integer.valueOf(val));
+    }
+    
+    /**
+     * Reads the value of a long property. Accessors that can
+     * read the property without boxing should override this.
+     * 
+     * @param bean The bean to read from
+     * @return The value
+     */
+    public long getLong(Object bean) {
+        return ((Long)get(bean)).longValue();
+    }
+    
+    /**
+     * Writes the value of a long property. Accessors that can
+     * write the property without boxing should override this.
+     * 
+     * @param bean The bean to write to
+     * @param val The value to write
+     */
+    public void setLong(Object bean, long val) {
+        set(bean, Long.valueOf(val));
+    }
+    
+    /**
+     * Reads the value of a double property. Accessors that can
+     * read the property without boxing should override this.
+     * 
+     * @param bean The bean to read from
+     * @return The value
+     */
+    public double getDouble(Object bean) {
+        return ((Double)get(bean)).doubleValue();
+    }
+    
+    /**
+     * Writes the value of a double property. Accessors that can
+     * write the property without boxing should override this.
+     * 
+     * @param bean The bean to write to
+     * @param val The value to write
+     */
+    public void setDouble(Object bean, double val) {
+        set(bean, Double.valueOf(val));
+    }
+    
+    /**
+     * Reads the value of a boolean property. Accessors that can
+     * read the property without boxing should override this.
+     * 
+     * @param bean The bean to read from
+     * @return The value
+     */
+    public boolean getBoolean(Object bean) {
+        return ((Boolean)get(bean)).booleanValue();
+    }
+    
+    /**
+     * Writes the value of a boolean property. Accessors that can
+     * write the property without boxing should override this.
+     * 
+     * @param bean The bean to write to
+     * @param val The value to write
+     */
+    public void setBoolean(Object bean, boolean val) {
+        set(bean, Boolean.valueOf(val));
+    }
+    
+    /**
+     * Indicates if the int, long, double and boolean get and
+     * set methods of this accessor read and write the property
+     * without boxing. If not they box the value anyway and it
+     * is cheaper to copy the value with {@link #get(Object)} and
+     * {@link #set(Object, Object)}. Accessors that override the
+     * primitive methods should override this as well.
+     * 
+     * @return True if the primitive methods do not box the value
+     */
+    public boolean hasPrimitiveAccess() {
+        return false;
+    }
+    
+    /**
+     * Helper for derived accessors to find a public method
+     * on the bean.
+     * 
+     * @param beanType The bean class
+     * @param name The name of the method
+     * @param parameterTypes The parameter types of the method
+     * @return The method or null if it does not exist
+     */
+    protected static Method findMethod(Class<?> beanType, String name, Class<?>... parameterTypes) {
+        try {
+            return beanType.getMethod(name, parameterTypes);
+        }
+        catch( NoSuchMethodException e ) {
+            return null;
+        }
+    }
+}
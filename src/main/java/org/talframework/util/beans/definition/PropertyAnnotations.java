@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class holds the annotations on a single property of
+ * a bean. It is built the first time the definition is asked
+ * about the annotations of that property, so that the same
+ * questions asked on every request are simple map lookups
+ * and properties that are never asked about are never
+ * indexed.
+ * 
+ * <p>A property carries an annotation if it is on its getter,
+ * its setter or the field of the same name in the bean class
+ * (or its superclasses). A property also carries any 
+ * annotations that are present on those annotations (meta
+ * annotations), other than the standard java.lang.annotation 
+ * ones.</p>
+ *
+ * @author Tom Spencer
+ */
+final class PropertyAnnotations {
+    
+    /** Holds the annotations on the getter */
+    private final Map<Class<?>, Annotation> readAnnotations;
+    /** Holds the annotations on the setter */
+    private final Map<Class<?>, Annotation> writeAnnotations;
+    /** Holds the annotations on the property (getter first, then setter, then field) */
+    private final Map<Class<?>, Annotation> annotations;
+    /** Holds the annotation types carried by the property (including meta annotations) */
+    private final Set<Class<?>> carried;
+    
+    /**
+     * Constructs the annotations
+     * 
+     * @param type The bean class
+     * @param name The name of the property
+     * @param reader The getter (or field) the property is read with (or null)
+     * @param writer The setter (or field) the property is written with (or null)
+     * @param field The field of the property if accessed directly (or null)
+     */
+    public PropertyAnnotations(Class<?> type, String name, AnnotatedElement reader, AnnotatedElement writer, Field field) {
+        if( field == null ) field = findField(type, name);
+        
+        this.readAnnotations = index(reader);
+        this.writeAnnotations = index(writer);
+        
+        Map<Class<?>, Annotation> all = new HashMap<Class<?>, Annotation>();
+        all.putAll(index(field));
+        all.putAll(writeAnnotations);
+        all.putAll(readAnnotations);
+        this.annotations = all.isEmpty() ? Collections.<Class<?>, Annotation>emptyMap() : all;
+        
+        Set<Class<?>> types = new HashSet<Class<?>>();
+        for( Annotation annotation : all.values() ) addCarried(annotation.annotationType(), types);
+        this.carried = types.isEmpty() ? Collections.<Class<?>>emptySet() : types;
+    }
+    
+    /**
+     * @return The annotation on the getter of the property (or null)
+     */
+    public <T extends Annotation> T getReadAnnotation(Class<T> annotation) {
+        return annotation.cast(readAnnotations.get(annotation));
+    }
+    
+    /**
+     * @return The annotation on the setter of the property (or null)
+     */
+    public <T extends Annotation> T getWriteAnnotation(Class<T> annotation) {
+        return annotation.cast(writeAnnotations.get(annotation));
+    }
+    
+    /**
+     * @return The annotation on the getter, setter or field of the property (or null)
+     */
+    public <T extends Annotation> T getAnnotation(Class<T> annotation) {
+        return annotation.cast(annotations.get(annotation));
+    }
+    
+    /**
+     * @return True if the property carries the annotation directly or as a meta annotation
+     */
+    public boolean hasAnnotation(Class<? extends Annotation> annotation) {
+        return carried.contains(annotation);
+    }
+    
+    /**
+     * Internal helper to index the annotations of an element
+     * 
+     * @param element The element (or null)
+     * @return The annotations by type
+     */
+    private static Map<Class<?>, Annotation> index(AnnotatedElement element) {
+        Annotation[] present = element != null ? element.getAnnotations() : null;
+        if( present == null || present.length == 0 ) return Collections.emptyMap();
+        
+        Map<Class<?>, Annotation> ret = new HashMap<Class<?>, Annotation>();
+        for( Annotation annotation : present ) ret.put(annotation.annotationType(), annotation);
+        return ret;
+    }
+    
+    /**
+     * Internal helper to add the annotation type and all its
+     * meta annotations to the set of carried annotations
+     * 
+     * @param annotationType The annotation type
+     * @param types The set to add to
+     */
+    private static void addCarried(Class<? extends Annotation> annotationType, Set<Class<?>> types) {
+        if( !types.add(annotationType) ) return;
+        
+        for( Annotation meta : annotationType.getAnnotations() ) {
+            Class<? extends Annotation> metaType = meta.annotationType();
+            if( metaType.getName().startsWith("java.lang.annotation.") ) continue;
+            addCarried(metaType, types);
+        }
+    }
+    
+    /**
+     * Internal helper to find the field of the same name as
+     * a property in the bean class or its superclasses
+     * 
+     * @param type The bean class
+     * @param name The name of the property
+     * @return The field or null
+     */
+    private static Field findField(Class<?> type, String name) {
+        Class<?> current = type;
+        while( current != null && current != Object.class ) {
+            try {
+                return current.getDeclaredField(name);
+            }
+            catch( NoSuchFieldException e ) {
+                current = current.getSuperclass();
+            }
+            catch( SecurityException e ) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
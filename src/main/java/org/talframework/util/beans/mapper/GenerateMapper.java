@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation declares a {@link Mapper} that should be
+ * generated at compile time. The generated mapper copies the
+ * properties from the source class to the target class by 
+ * calling the getters and setters directly, so no reflection
+ * or runtime code generation is needed at all.
+ * 
+ * <p>The same rules as {@link GenericMapper} are used to match
+ * the properties, by name or by the given name variations. 
+ * Unlike the generic mapper though, any readable property of
+ * the source that cannot be mapped (no writable target property
+ * or incompatible types) is a compile error unless it is 
+ * listed in {@link #ignore()}.</p>
+ * 
+ * <p>The mapper is generated into the same package as the
+ * annotated type and is named after it with any '$' replaced
+ * by '_' and {@link #SUFFIX} appended. The annotated type can
+ * be any class or interface, typically the source bean itself
+ * or a nested type declared just to hold the annotation.</p>
+ *
+ * @author Tom Spencer
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper {
+    
+    /** The suffix added to the annotated type name to form the name of the generated mapper */
+    public static final String SUFFIX = "_Mapper";
+    
+    /**
+     * @return The class mapped from
+     */
+    public Class<?> source();
+    
+    /**
+     * @return The class mapped to
+     */
+    public Class<?> target();
+    
+    /**
+     * @return The name variations in the form "sourceProperty=targetProperty"
+     */
+    public String[] nameVariations() default {};
+    
+    /**
+     * @return The source properties that are deliberately not mapped
+     */
+    public String[] ignore() default {};
+}
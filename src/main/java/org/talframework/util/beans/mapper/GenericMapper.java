@@ -22,8 +22,16 @@
  */
 package org.talframework.util.beans.mapper;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.talframework.util.beans.BeanDefinition;
 import org.talframework.util.beans.cloner.Cloner;
@@ -42,6 +50,35 @@ import org.talframework.util.beans.definition.BeanDefinitionsSingleton;
  * between basic types. However, it is also possible to setup custom
  * conversion against each source property.</p>
  * 
+ * <p>If the destination bean has a constructor taking its 
+ * properties (see {@link BeanDefinition#getConstructorProperties()})
+ * then new destination beans are created by passing the mapped
+ * values to that constructor, so immutable beans can be the
+ * target of the mapping.</p>
+ * 
+ * <p>The configuration is compiled into a plan of the property 
+ * mappings the first time the mapper is used, so each mapping
+ * does no name or mapper lookups. Changing the configuration
+ * through the setters discards the plan, under the same lock
+ * the plan is created with. Invalidating any bean definitions
+ * (see {@link BeanDefinitionsSingleton#getVersion()}) also
+ * discards it, and definitions set by class are then looked
+ * up again. The maps returned by the getters should not be
+ * changed directly once the mapper is in use.</p>
+ * 
+ * <p>If {@link #setGenerated(boolean) generated} is set then
+ * a class is generated at runtime that calls the getters and
+ * setters directly, which the JIT can inline fully. If the 
+ * class cannot be generated, for instance there is no compiler
+ * available, the mapper falls back to reflection. Where no
+ * runtime generation is wanted the mapper can instead be 
+ * generated at compile time, see {@link GenerateMapper}.</p>
+ * 
+ * <p>Batches of beans can be mapped together, see 
+ * {@link #mapAll(Collection, Class)}, optionally in parallel,
+ * or mapped lazily one at a time as they are iterated over, 
+ * see {@link #mapIterator(Iterator, Class)}.</p>
+ * 
  * <p>Mappers are not served up by a singleton instance unlike
  * {@link BeanDefinition} and {@link Cloner} instead you would set
  * up your mappers in your config (i.e. Spring config) and inject
@@ -56,12 +93,26 @@ public class GenericMapper implements Mapper {
 
     /** Holds the definition of the source bean */
     private BeanDefinition sourceDefinition;
+    /** Holds the source class if the source definition is looked up by class (or null) */
+    private Class<?> sourceClass;
     /** Holds the definition of the destination bean */
     private BeanDefinition destDefinition;
+    /** Holds the destination class if the destination definition is looked up by class (or null) */
+    private Class<?> destClass;
     /** Holds an name variations between source (key) and destination (value) */
     private Map<String, String> nameVariations;
     /** Holds any mappers for embedded objects against source property names */
     private Map<String, Mapper> propertyMappers;
+    /** Indicates if a class mapping the properties directly should be generated */
+    private boolean generated;
+    /** Holds the compiled plan of the above (created on first use after any change) */
+    private volatile MappingPlan plan;
+    /** Holds the version of the bean definitions the plan was created from */
+    private volatile long planVersion;
+    /** Holds the executor to map large batches in parallel with (or null to map them in the caller) */
+    private ExecutorService executor;
+    /** Holds the number of beans in each part of a batch mapped in parallel */
+    private int parallelThreshold = 1000;
     
     /**
      * {@inheritDoc}
@@ -71,9 +122,8 @@ public class GenericMapper implements Mapper {
         if( !source.getClass().equals(sourceDefinition.getType()) ) throw new IllegalArgumentException("The mapper has been supplied with a source [" + source + "] of different type to configured source: " + sourceDefinition);
         if( !expected.equals(destDefinition.getType()) ) throw new IllegalArgumentException("The mapper has been supplied with a expected [" + expected + "] of different type to configured dest: " + destDefinition);
         
-        Target ret = source != null ? (Target)destDefinition.newInstance() : null;
-        if( ret != null ) internalMap(source, ret);
-        return ret;
+        if( source == null ) return null;
+        return (Target)getPlan().map(source);
     };
     
     /**
@@ -83,45 +133,165 @@ public class GenericMapper implements Mapper {
         if( !source.getClass().equals(sourceDefinition.getType()) ) throw new IllegalArgumentException("The mapper has been supplied with a source [" + source + "] of different type to configured source: " + sourceDefinition);
         if( !target.getClass().equals(destDefinition.getType()) ) throw new IllegalArgumentException("The mapper has been supplied with a target [" + target + "] of different type to configured dest: " + destDefinition);
         
-        if( source != null ) internalMap(source, target);
+        if( source != null ) getPlan().map(source, target);
+    }
+    
+    /**
+     * Maps all the source beans into new destination beans. The
+     * checks on the configuration and the plan are only done once
+     * for the whole batch. If an {@link #setExecutor(ExecutorService) executor}
+     * is set and there are more sources than the 
+     * {@link #setParallelThreshold(int) threshold} then the batch 
+     * is split into parts of that size that are mapped in parallel.
+     * 
+     * @param sources The source beans (null entries are mapped to null)
+     * @param expected The expected type of the targets
+     * @return The new destination beans in the same order as the sources
+     */
+    public <Source, Target> List<Target> mapAll(Collection<? extends Source> sources, Class<Target> expected) {
+        Object[] results = new Object[sources.size()];
+        internalMapAll(sources.toArray(), results, expected);
+        
+        List<Target> ret = new ArrayList<Target>(results.length);
+        for( Object result : results ) ret.add(expected.cast(result));
+        return ret;
+    }
+    
+    /**
+     * Maps all the source beans into new destination beans.
+     * 
+     * @param sources The source beans (null entries are mapped to null)
+     * @param expected The expected type of the targets
+     * @return The new destination beans in the same order as the sources
+     * @see #mapAll(Collection, Class)
+     */
+    @SuppressWarnings("unchecked")
+    public <Source, Target> Target[] mapAll(Source[] sources, Class<Target> expected) {
+        Target[] ret = (Target[])Array.newInstance(expected, sources.length);
+        internalMapAll(sources, ret, expected);
+        return ret;
+    }
+    
+    /**
+     * Maps the source beans lazily, each one being mapped as it
+     * is taken from the returned iterator. This allows large 
+     * result sets, such as database cursors, to be mapped without
+     * holding all the sources or targets in memory. The plan in
+     * force when this is called is used for all the beans.
+     * 
+     * @param sources The source beans (null entries are mapped to null)
+     * @param expected The expected type of the targets
+     * @return The iterator over the new destination beans
+     */
+    public <Source, Target> Iterator<Target> mapIterator(Iterator<? extends Source> sources, Class<Target> expected) {
+        if( !expected.equals(destDefinition.getType()) ) throw new IllegalArgumentException("The mapper has been supplied with a expected [" + expected + "] of different type to configured dest: " + destDefinition);
+        return new MappingIterator<Target>(getPlan(), sources, expected);
     }
     
     /**
-     * Internal helper to actually perform the mapping, used by the
-     * public methods.
+     * Maps the source beans lazily each time the returned 
+     * iterable is iterated over.
+     * 
+     * @param sources The source beans (null entries are mapped to null)
+     * @param expected The expected type of the targets
+     * @return The iterable over the new destination beans
+     * @see #mapIterator(Iterator, Class)
      */
-    private <Source, Target> void internalMap(Source source, Target target) {
-        for( String prop : sourceDefinition.getProperties() ) {
-            if( !sourceDefinition.canRead(prop) ) continue;
-            
-            String destProp = prop;
-            if( nameVariations != null && nameVariations.containsKey(prop) ) destProp = nameVariations.get(prop);
-            
-            // Map if possible
-            if( destDefinition.canWrite(destProp) ) {
-                destDefinition.write(target, destProp, mapProperty(prop, sourceDefinition.read(source, prop), destDefinition.getPropertyType(destProp)));
+    public <Source, Target> Iterable<Target> mapIterable(final Iterable<? extends Source> sources, final Class<Target> expected) {
+        if( !expected.equals(destDefinition.getType()) ) throw new IllegalArgumentException("The mapper has been supplied with a expected [" + expected + "] of different type to configured dest: " + destDefinition);
+        return new Iterable<Target>() {
+            public Iterator<Target> iterator() {
+                return mapIterator(sources.iterator(), expected);
             }
-        }
+        };
     }
     
     /**
-     * Internal helper to map a property value from source to destination
+     * Internal helper to map a batch, in parallel if it is
+     * large enough and there is an executor.
      */
-    private Object mapProperty(String prop, Object value, Class<?> type) {
-        Object ret = null;
+    private void internalMapAll(final Object[] sources, final Object[] results, Class<?> expected) {
+        if( !expected.equals(destDefinition.getType()) ) throw new IllegalArgumentException("The mapper has been supplied with a expected [" + expected + "] of different type to configured dest: " + destDefinition);
         
-        // If mapper use it
-        if( propertyMappers != null && propertyMappers.containsKey(prop) ) {
-            ret = propertyMappers.get(prop).map(value, type);
+        final MappingPlan current = getPlan();
+        if( executor == null || sources.length <= parallelThreshold ) {
+            mapRange(current, sources, results, 0, sources.length);
+            return;
         }
         
-        // Otherwise perform defaults
-        else if( value != null ) {
-            if( type.isAssignableFrom(value.getClass()) ) ret = value;
-            else if( String.class.equals(type) ) ret = value.toString();
-            // TODO: Utilities for conversion, will be needed from binding also
+        List<Future<?>> parts = new ArrayList<Future<?>>(sources.length / parallelThreshold);
+        for( int i = parallelThreshold ; i < sources.length ; i += parallelThreshold ) {
+            final int from = i;
+            final int to = Math.min(i + parallelThreshold, sources.length);
+            parts.add(executor.submit(new Runnable() {
+                public void run() {
+                    mapRange(current, sources, results, from, to);
+                }
+            }));
         }
         
+        // First part is mapped by this thread
+        mapRange(current, sources, results, 0, parallelThreshold);
+        
+        try {
+            for( Future<?> part : parts ) part.get();
+        }
+        catch( ExecutionException e ) {
+            if( e.getCause() instanceof RuntimeException ) throw (RuntimeException)e.getCause();
+            if( e.getCause() instanceof Error ) throw (Error)e.getCause();
+            throw new IllegalStateException("Unable to map batch due to caught exception", e.getCause());
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for batch to be mapped", e);
+        }
+    }
+    
+    /**
+     * Internal helper to map part of a batch
+     */
+    private void mapRange(MappingPlan current, Object[] sources, Object[] results, int from, int to) {
+        for( int i = from ; i < to ; i++ ) {
+            results[i] = mapOne(current, sources[i]);
+        }
+    }
+    
+    /**
+     * Internal helper to map a single source bean from a batch
+     * or iterator, the configuration having already been checked.
+     */
+    private static Object mapOne(MappingPlan current, Object source) {
+        if( source == null ) return null;
+        if( source.getClass() != current.getSourceDefinition().getType() ) throw new IllegalArgumentException("The mapper has been supplied with a source [" + source + "] of different type to configured source: " + current.getSourceDefinition());
+        return current.map(source);
+    }
+    
+    /**
+     * Internal helper to get the compiled plan of the current
+     * configuration, creating it the first time it is needed
+     * after the configuration has been changed or any bean
+     * definitions have been invalidated. The plan is created
+     * under a lock as it may generate and compile a class, 
+     * which must only be done once. The version is read before
+     * the plan, and written after it, so a plan is never used
+     * with a newer version than it was created for.
+     */
+    private MappingPlan getPlan() {
+        BeanDefinitionsSingleton definitions = BeanDefinitionsSingleton.getInstance();
+        long version = definitions.getVersion();
+        MappingPlan ret = planVersion == version ? plan : null;
+        if( ret == null ) {
+            synchronized( this ) {
+                ret = planVersion == version ? plan : null;
+                if( ret == null ) {
+                    if( sourceClass != null ) sourceDefinition = definitions.getDefinition(sourceClass);
+                    if( destClass != null ) destDefinition = definitions.getDefinition(destClass);
+                    ret = new MappingPlan(sourceDefinition, destDefinition, nameVariations, propertyMappers, generated);
+                    plan = ret;
+                    planVersion = version;
+                }
+            }
+        }
         return ret;
     }
     
@@ -141,8 +311,10 @@ public class GenericMapper implements Mapper {
      *
      * @param sourceDefinition the sourceDefinition to set
      */
-    public void setSourceDefinition(BeanDefinition sourceDefinition) {
+    public synchronized void setSourceDefinition(BeanDefinition sourceDefinition) {
         this.sourceDefinition = sourceDefinition;
+        this.sourceClass = null;
+        this.plan = null;
     }
     
     /**
@@ -150,8 +322,10 @@ public class GenericMapper implements Mapper {
      *
      * @param sourceClass the sourceClass to use
      */
-    public void setSourceDefinition(Class<?> sourceClass) {
+    public synchronized void setSourceDefinition(Class<?> sourceClass) {
         this.sourceDefinition = BeanDefinitionsSingleton.getInstance().getDefinition(sourceClass);
+        this.sourceClass = sourceClass;
+        this.plan = null;
     }
 
     /**
@@ -166,8 +340,10 @@ public class GenericMapper implements Mapper {
      *
      * @param destDefinition the destDefinition to set
      */
-    public void setDestDefinition(BeanDefinition destDefinition) {
+    public synchronized void setDestDefinition(BeanDefinition destDefinition) {
         this.destDefinition = destDefinition;
+        this.destClass = null;
+        this.plan = null;
     }
     
     /**
@@ -175,8 +351,10 @@ public class GenericMapper implements Mapper {
      *
      * @param destClass the destClass to use
      */
-    public void setDestDefinition(Class<?> destClass) {
+    public synchronized void setDestDefinition(Class<?> destClass) {
         this.destDefinition = BeanDefinitionsSingleton.getInstance().getDefinition(destClass);
+        this.destClass = destClass;
+        this.plan = null;
     }
 
     /**
@@ -191,13 +369,15 @@ public class GenericMapper implements Mapper {
      *
      * @param nameVariations the nameVariations to set
      */
-    public void setNameVariations(Map<String, String> nameVariations) {
+    public synchronized void setNameVariations(Map<String, String> nameVariations) {
         this.nameVariations = nameVariations;
+        this.plan = null;
     }
     
-    public void addNameVariation(String sourceName, String destName) {
+    public synchronized void addNameVariation(String sourceName, String destName) {
         if( nameVariations == null ) nameVariations = new HashMap<String, String>();
         nameVariations.put(sourceName, destName);
+        this.plan = null;
     }
 
     /**
@@ -212,7 +392,95 @@ public class GenericMapper implements Mapper {
      *
      * @param propertyMappers the propertyMappers to set
      */
-    public void setPropertyMappers(Map<String, Mapper> propertyMappers) {
+    public synchronized void setPropertyMappers(Map<String, Mapper> propertyMappers) {
         this.propertyMappers = propertyMappers;
-    };
+        this.plan = null;
+    }
+
+    /**
+     * @return True if a mapper class is generated for the configuration
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    /**
+     * Setter for the generated field. If true a class that
+     * performs the mapping by calling the getters and setters
+     * directly is generated the first time the mapper is used.
+     *
+     * @param generated True if a mapper class should be generated
+     */
+    public synchronized void setGenerated(boolean generated) {
+        this.generated = generated;
+        this.plan = null;
+    }
+
+    /**
+     * @return The executor large batches are mapped in parallel with (or null)
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Setter for the executor field. If set then batches larger
+     * than the parallel threshold are split and mapped in
+     * parallel with this executor. The executor is not owned
+     * by the mapper and is not shut down by it.
+     *
+     * @param executor The executor to use (or null to map batches in the caller)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return The number of beans in each part of a batch mapped in parallel
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Setter for the parallelThreshold field. Batches larger 
+     * than this are mapped in parallel (if there is an executor)
+     * in parts of this size.
+     *
+     * @param parallelThreshold The size of each part
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        if( parallelThreshold < 1 ) throw new IllegalArgumentException("The parallel threshold must be at least 1: " + parallelThreshold);
+        this.parallelThreshold = parallelThreshold;
+    }
+    
+    /**
+     * Iterator that maps each source bean as it is taken
+     */
+    private static final class MappingIterator<Target> implements Iterator<Target> {
+        /** The plan to map with */
+        private final MappingPlan plan;
+        /** The source beans */
+        private final Iterator<?> sources;
+        /** The expected type of the targets */
+        private final Class<Target> expected;
+        
+        public MappingIterator(MappingPlan plan, Iterator<?> sources, Class<Target> expected) {
+            this.plan = plan;
+            this.sources = sources;
+            this.expected = expected;
+        }
+        
+        public boolean hasNext() {
+            return sources.hasNext();
+        }
+        
+        public Target next() {
+            return expected.cast(mapOne(plan, sources.next()));
+        }
+        
+        public void remove() {
+            sources.remove();
+        }
+    }
 }
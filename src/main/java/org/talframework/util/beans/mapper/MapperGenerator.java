@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.mapper;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.talframework.tal.aspects.annotations.TraceWarn;
+import org.talframework.util.beans.PropertyHandle;
+import org.talframework.util.beans.definition.ClassCompiler;
+
+/**
+ * This class generates a {@link Mapper} at runtime from a
+ * {@link MappingPlan}. The generated class reads each source
+ * property and writes the destination property by calling the
+ * getter and setter directly, applying the same conversions as
+ * the plan, so the JIT can inline the whole mapping.
+ * 
+ * <p>The class is compiled in memory with the system Java 
+ * compiler and loaded in its own classloader. A mapper can
+ * only be generated if there is a compiler (i.e. running on
+ * a JDK), the source and destination classes are public with
+ * public getters and setters, the destination has a public 
+ * default constructor and the classes can be found on the
+ * classpath. Otherwise {@link #generate()} returns null and
+ * the plan is performed reflectively.</p>
+ *
+ * @author Tom Spencer
+ */
+final class MapperGenerator {
+    /** The package the mappers are generated in */
+    private static final String PACKAGE = "org.talframework.util.beans.mapper.generated";
+    /** The number of mappers generated, used to name them */
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    
+    /** The plan to generate the mapper from */
+    private final MappingPlan plan;
+    /** The source bean class */
+    private final Class<?> sourceType;
+    /** The destination bean class */
+    private final Class<?> destType;
+    
+    /**
+     * Constructs the generator
+     * 
+     * @param plan The plan to generate the mapper for
+     */
+    public MapperGenerator(MappingPlan plan) {
+        this.plan = plan;
+        this.sourceType = plan.getSourceDefinition().getType();
+        this.destType = plan.getDestDefinition().getType();
+    }
+    
+    /**
+     * Generates, compiles and loads the mapper.
+     * 
+     * @return The mapper or null if it cannot be generated
+     */
+    public Mapper generate() {
+        String simpleName = "Mapper" + COUNT.incrementAndGet() + "_" + sourceType.getSimpleName() + "_" + destType.getSimpleName();
+        String name = PACKAGE + "." + simpleName;
+        
+        try {
+            String source = generateSource(simpleName);
+            if( source == null ) return null;
+            
+            Class<?> mapperClass = new ClassCompiler(destType, sourceType).compile(name, source);
+            Constructor<?> ctor = mapperClass.getConstructor(Mapper[].class);
+            return (Mapper)ctor.newInstance((Object)plan.getMappers());
+        }
+        catch( Exception e ) {
+            cannotGenerate(sourceType, destType, e.toString());
+            return null;
+        }
+        catch( LinkageError e ) {
+            cannotGenerate(sourceType, destType, e.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * Generates the source of the mapper
+     * 
+     * @param simpleName The simple name of the mapper class
+     * @return The source or null if the plan cannot be generated
+     */
+    private String generateSource(String simpleName) throws IntrospectionException {
+        if( plan.isConstruct() ) return unsupported("destination is created through its constructor");
+        if( !isPublic(sourceType) || !isPublic(destType) ) return unsupported("source and destination must be public classes");
+        if( Modifier.isAbstract(destType.getModifiers()) ) return unsupported("destination is abstract");
+        try {
+            if( !Modifier.isPublic(destType.getConstructor().getModifiers()) ) return unsupported("destination has no public default constructor");
+        }
+        catch( NoSuchMethodException e ) {
+            return unsupported("destination has no public default constructor");
+        }
+        
+        Map<String, PropertyDescriptor> sourceProps = describe(sourceType);
+        Map<String, PropertyDescriptor> destProps = describe(destType);
+        
+        String source = sourceType.getCanonicalName();
+        String dest = destType.getCanonicalName();
+        Mapper[] mappers = plan.getMappers();
+        StringBuilder body = new StringBuilder();
+        for( int i = 0 ; i < plan.getStepCount() ; i++ ) {
+            PropertyHandle sourceHandle = plan.getSourceHandle(i);
+            PropertyHandle destHandle = plan.getDestHandle(i);
+            PropertyDescriptor sourceProp = sourceProps.get(sourceHandle.getName());
+            PropertyDescriptor destProp = destProps.get(destHandle.getName());
+            
+            Method reader = sourceProp != null ? sourceProp.getReadMethod() : null;
+            Method writer = destProp != null ? destProp.getWriteMethod() : null;
+            if( reader == null || !Modifier.isPublic(reader.getModifiers()) ) return unsupported("no public getter for " + sourceHandle.getName());
+            if( writer == null || !Modifier.isPublic(writer.getModifiers()) ) return unsupported("no public setter for " + destHandle.getName());
+            
+            Class<?> from = reader.getReturnType();
+            Class<?> to = writer.getParameterTypes()[0];
+            String toName = to.getCanonicalName();
+            if( toName == null ) return unsupported("type of " + destHandle.getName() + " has no name");
+            
+            String read = "s." + reader.getName() + "()";
+            String value = null;
+            if( to.isPrimitive() ) {
+                if( from != to || mappers[i] != null ) return unsupported("cannot convert to primitive " + destHandle.getName());
+                value = read;
+            }
+            else if( mappers[i] != null ) value = "(" + toName + ")mappers[" + i + "].map(" + read + ", " + toName + ".class)";
+            else if( !from.isPrimitive() && to.isAssignableFrom(from) ) value = "(" + toName + ")" + read;
+            else value = "(" + toName + ")convert(" + read + ", " + toName + ".class)";
+            
+            body.append("        t.").append(writer.getName()).append("(").append(value).append(");\n");
+        }
+        
+        StringBuilder ret = new StringBuilder();
+        ret.append("package ").append(PACKAGE).append(";\n\n");
+        ret.append("@SuppressWarnings(\"unchecked\")\n");
+        ret.append("public final class ").append(simpleName).append(" implements ").append(Mapper.class.getName()).append(" {\n");
+        ret.append("    private final ").append(Mapper.class.getName()).append("[] mappers;\n\n");
+        ret.append("    public ").append(simpleName).append("(").append(Mapper.class.getName()).append("[] mappers) {\n");
+        ret.append("        this.mappers = mappers;\n");
+        ret.append("    }\n\n");
+        ret.append("    public <Source, Target> Target map(Source source, Class<Target> expected) {\n");
+        ret.append("        if( source == null ) return null;\n");
+        ret.append("        ").append(dest).append(" target = new ").append(dest).append("();\n");
+        ret.append("        map(source, target);\n");
+        ret.append("        return (Target)target;\n");
+        ret.append("    }\n\n");
+        ret.append("    public <Source, Target> void map(Source source, Target target) {\n");
+        ret.append("        ").append(source).append(" s = (").append(source).append(")source;\n");
+        ret.append("        ").append(dest).append(" t = (").append(dest).append(")target;\n");
+        ret.append(body);
+        ret.append("    }\n\n");
+        ret.append("    private static Object convert(Object value, Class<?> type) {\n");
+        ret.append("        if( value == null ) return null;\n");
+        ret.append("        if( type.isAssignableFrom(value.getClass()) ) return value;\n");
+        ret.append("        if( String.class.equals(type) ) return value.toString();\n");
+        ret.append("        return null;\n");
+        ret.append("    }\n");
+        ret.append("}\n");
+        return ret.toString();
+    }
+    
+    /**
+     * Internal helper to get the property descriptors of a class by name
+     */
+    private static Map<String, PropertyDescriptor> describe(Class<?> type) throws IntrospectionException {
+        Map<String, PropertyDescriptor> ret = new HashMap<String, PropertyDescriptor>();
+        for( PropertyDescriptor prop : Introspector.getBeanInfo(type).getPropertyDescriptors() ) {
+            ret.put(prop.getName(), prop);
+        }
+        return ret;
+    }
+    
+    /**
+     * @return True if the class is public and can be named from the generated mapper
+     */
+    private static boolean isPublic(Class<?> type) {
+        Class<?> current = type;
+        while( current != null ) {
+            if( !Modifier.isPublic(current.getModifiers()) ) return false;
+            if( current.isMemberClass() && !Modifier.isStatic(current.getModifiers()) ) return false;
+            current = current.getEnclosingClass();
+        }
+        return type.getCanonicalName() != null;
+    }
+    
+    /**
+     * Internal helper to report why the mapper cannot be generated
+     * 
+     * @return Always null
+     */
+    private <T> T unsupported(String reason) {
+        cannotGenerate(sourceType, destType, reason);
+        return null;
+    }
+    
+    /**
+     * Method is present to call so the aspect loggers can log it.
+     */
+    @TraceWarn
+    private void cannotGenerate(Class<?> sourceType, Class<?> destType, String reason) {
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.mapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.PropertyHandle;
+
+/**
+ * This class is the compiled form of the configuration of a
+ * {@link GenericMapper}. The source properties that can be 
+ * mapped, the destination property each maps to and the 
+ * mapper (if any) to convert the value with are all worked
+ * out once when the plan is created. Mapping is then just a
+ * walk over these steps, reading only the source properties
+ * that are mapped. 
+ * 
+ * <p>If requested the plan also generates a class that maps
+ * the properties by calling the getters and setters directly
+ * (see {@link MapperGenerator}). When one is generated it is
+ * used to perform the mapping instead of the plan's steps.</p>
+ * 
+ * <p>A plan is immutable, the mapper creates a new one when
+ * its configuration changes.</p>
+ *
+ * @author Tom Spencer
+ */
+final class MappingPlan {
+    
+    /** Holds the definition of the source bean */
+    private final BeanDefinition sourceDefinition;
+    /** Holds the definition of the destination bean */
+    private final BeanDefinition destDefinition;
+    /** Indicates if new destination beans are created by passing the values to their constructor */
+    private final boolean construct;
+    
+    /** Holds the source property of each step */
+    private final PropertyHandle[] sourceHandles;
+    /** Holds the destination property of each step */
+    private final PropertyHandle[] destHandles;
+    /** Holds the type of the destination property of each step */
+    private final Class<?>[] destTypes;
+    /** Holds the type the value of each step must be, the wrapper if the destination is primitive */
+    private final Class<?>[] valueTypes;
+    /** Holds the mapper of each step (null to use the default conversion) */
+    private final Mapper[] mappers;
+    /** Holds if the destination property of each step is written (and not only passed to the constructor) */
+    private final boolean[] written;
+    /** Holds the mapper generated from this plan (or null if not generated) */
+    private final Mapper generated;
+    
+    /**
+     * Constructs the plan
+     * 
+     * @param sourceDefinition The definition of the source bean
+     * @param destDefinition The definition of the destination bean
+     * @param nameVariations The destination property names against source names (or null)
+     * @param propertyMappers The mappers against source property names (or null)
+     * @param generate True if a mapper class should be generated from the plan
+     */
+    public MappingPlan(BeanDefinition sourceDefinition, BeanDefinition destDefinition, Map<String, String> nameVariations, Map<String, Mapper> propertyMappers, boolean generate) {
+        this.sourceDefinition = sourceDefinition;
+        this.destDefinition = destDefinition;
+        
+        List<String> constructorProps = destDefinition.getConstructorProperties();
+        this.construct = !constructorProps.isEmpty();
+        
+        List<PropertyHandle> steps = new ArrayList<PropertyHandle>();
+        List<PropertyHandle> sources = new ArrayList<PropertyHandle>();
+        for( PropertyHandle sourceProp : sourceDefinition.getPropertyHandles() ) {
+            if( !sourceProp.canRead() ) continue;
+            
+            String prop = sourceProp.getName();
+            String destProp = prop;
+            if( nameVariations != null && nameVariations.containsKey(prop) ) destProp = nameVariations.get(prop);
+            
+            PropertyHandle destHandle = destDefinition.getPropertyHandle(destProp);
+            if( destHandle != null && (destHandle.canWrite() || constructorProps.contains(destProp)) ) {
+                sources.add(sourceProp);
+                steps.add(destHandle);
+            }
+        }
+        
+        this.sourceHandles = sources.toArray(new PropertyHandle[sources.size()]);
+        this.destHandles = new PropertyHandle[steps.size()];
+        this.destTypes = new Class<?>[steps.size()];
+        this.valueTypes = new Class<?>[steps.size()];
+        this.mappers = new Mapper[steps.size()];
+        this.written = new boolean[steps.size()];
+        for( int i = 0 ; i < sourceHandles.length ; i++ ) {
+            String prop = sourceHandles[i].getName();
+            PropertyHandle destHandle = steps.get(i);
+            
+            destHandles[i] = destHandle;
+            destTypes[i] = destHandle.getType();
+            valueTypes[i] = wrapperOf(destHandle.getType());
+            mappers[i] = propertyMappers != null ? propertyMappers.get(prop) : null;
+            written[i] = destHandle.canWrite() && !constructorProps.contains(destHandle.getName());
+        }
+        
+        this.generated = generate ? new MapperGenerator(this).generate() : null;
+    }
+    
+    /**
+     * @return The definition of the source bean
+     */
+    public BeanDefinition getSourceDefinition() {
+        return sourceDefinition;
+    }
+    
+    /**
+     * @return The definition of the destination bean
+     */
+    public BeanDefinition getDestDefinition() {
+        return destDefinition;
+    }
+    
+    /**
+     * @return True if new destination beans are created through their constructor
+     */
+    public boolean isConstruct() {
+        return construct;
+    }
+    
+    /**
+     * @return The number of properties that are mapped
+     */
+    public int getStepCount() {
+        return sourceHandles.length;
+    }
+    
+    /**
+     * @return The source property of the step
+     */
+    public PropertyHandle getSourceHandle(int step) {
+        return sourceHandles[step];
+    }
+    
+    /**
+     * @return The destination property of the step
+     */
+    public PropertyHandle getDestHandle(int step) {
+        return destHandles[step];
+    }
+    
+    /**
+     * @return The mappers of each step (entries are null if the default conversion is used)
+     */
+    public Mapper[] getMappers() {
+        return mappers.clone();
+    }
+    
+    /**
+     * @return True if the plan is performed by a generated mapper
+     */
+    public boolean isGenerated() {
+        return generated != null;
+    }
+    
+    /**
+     * Maps the source onto a new destination bean, creating it
+     * through its constructor if it has one taking its properties.
+     * 
+     * @param source The source bean
+     * @return The new destination bean
+     */
+    public Object map(Object source) {
+        if( generated != null ) return generated.map(source, destDefinition.getType());
+        if( !construct ) {
+            Object ret = destDefinition.newInstance();
+            map(source, ret);
+            return ret;
+        }
+        
+        Object[] values = new Object[destDefinition.getPropertyHandles().size()];
+        for( int i = 0 ; i < sourceHandles.length ; i++ ) {
+            values[destHandles[i].getIndex()] = convert(i, sourceHandles[i].read(source));
+        }
+        
+        Object ret = destDefinition.newInstance(values);
+        for( int i = 0 ; i < sourceHandles.length ; i++ ) {
+            if( written[i] ) destHandles[i].write(ret, values[destHandles[i].getIndex()]);
+        }
+        return ret;
+    }
+    
+    /**
+     * Maps the source onto an existing destination bean
+     * 
+     * @param source The source bean
+     * @param target The destination bean
+     */
+    public void map(Object source, Object target) {
+        if( generated != null ) {
+            generated.map(source, target);
+            return;
+        }
+        
+        for( int i = 0 ; i < sourceHandles.length ; i++ ) {
+            PropertyHandle destHandle = destHandles[i];
+            if( destHandle.canWrite() ) destHandle.write(target, convert(i, sourceHandles[i].read(source)));
+        }
+    }
+    
+    /**
+     * Internal helper to convert the value of a step to the
+     * type of the destination property
+     */
+    private Object convert(int step, Object value) {
+        Object ret = null;
+        Class<?> type = destTypes[step];
+        
+        // If mapper use it
+        if( mappers[step] != null ) {
+            ret = mappers[step].map(value, type);
+        }
+        
+        // Otherwise perform defaults
+        else if( value != null ) {
+            if( valueTypes[step].isAssignableFrom(value.getClass()) ) ret = value;
+            else if( String.class.equals(type) ) ret = value.toString();
+            // TODO: Utilities for conversion, will be needed from binding also
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * @return The wrapper class if the type is primitive, otherwise the type
+     */
+    private static Class<?> wrapperOf(Class<?> type) {
+        if( !type.isPrimitive() ) return type;
+        else if( type == int.class ) return Integer.class;
+        else if( type == long.class ) return Long.class;
+        else if( type == double.class ) return Double.class;
+        else if( type == boolean.class ) return Boolean.class;
+        else if( type == float.class ) return Float.class;
+        else if( type == short.class ) return Short.class;
+        else if( type == byte.class ) return Byte.class;
+        else if( type == char.class ) return Character.class;
+        else return Void.class;
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import org.talframework.util.beans.definition.GenerateDefinition;
+import org.talframework.util.beans.processor.PropertyFinder.Property;
+
+/**
+ * This annotation processor generates a bean definition for
+ * each class marked with {@link GenerateDefinition}. The
+ * properties are found using the same rules as the JavaBeans
+ * introspector, but at compile time, and the definition 
+ * created has an accessor for each property that calls the
+ * getter and setter directly.
+ *
+ * @author Tom Spencer
+ */
+@SupportedAnnotationTypes("org.talframework.util.beans.definition.GenerateDefinition")
+public class BeanDefinitionProcessor extends AbstractProcessor {
+    
+    /** Finds the properties of the beans (created when initialised) */
+    private PropertyFinder finder;
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.finder = new PropertyFinder(processingEnv);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for( Element element : roundEnv.getElementsAnnotatedWith(GenerateDefinition.class) ) {
+            if( element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.INTERFACE ) {
+                processingEnv.getMessager().printMessage(Kind.ERROR, "Bean definitions can only be generated for classes and interfaces", element);
+                continue;
+            }
+            
+            TypeElement type = (TypeElement)element;
+            if( !finder.isAccessible(type) ) {
+                processingEnv.getMessager().printMessage(Kind.ERROR, "Bean definitions cannot be generated for private classes", element);
+                continue;
+            }
+            
+            try {
+                generate(type);
+            }
+            catch( IOException e ) {
+                processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to generate bean definition: " + e.getMessage(), element);
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Generates the definition for the given type
+     * 
+     * @param type The bean type
+     */
+    private void generate(TypeElement type) throws IOException {
+        String packageName = getPackage(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String generatedName = binaryName.replace('$', '_') + GenerateDefinition.SUFFIX;
+        String simpleName = generatedName.substring(generatedName.lastIndexOf('.') + 1);
+        String beanName = erasure(type.asType());
+        
+        Map<String, Property> properties = finder.findProperties(type);
+        
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(generatedName, type);
+        PrintWriter out = new PrintWriter(file.openWriter());
+        try {
+            if( packageName.length() > 0 ) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            
+            out.println("/**");
+            out.println(" * Bean definition for {@link " + beanName + "}.");
+            out.println(" * This class is generated by the " + getClass().getSimpleName() + ", do not edit.");
+            out.println(" */");
+            out.println("@SuppressWarnings(\"unchecked\")");
+            out.println("public final class " + simpleName + " extends org.talframework.util.beans.definition.BeanDefinitionImpl {");
+            out.println();
+            out.println("    public " + simpleName + "() {");
+            out.println("        super(" + beanName + ".class, new org.talframework.util.beans.definition.PropertyAccessor[]{");
+            for( int i = 0 ; i < properties.size() ; i++ ) {
+                out.println("                new Accessor" + i + "()" + (i < properties.size() - 1 ? "," : ""));
+            }
+            out.println("        });");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * Registers this definition with the BeanDefinitionsSingleton");
+            out.println("     */");
+            out.println("    public static void register() {");
+            out.println("        org.talframework.util.beans.definition.BeanDefinitionsSingleton.getInstance().addDefinition(new " + simpleName + "());");
+            out.println("    }");
+            
+            if( finder.isInstantiable(type) ) {
+                out.println();
+                out.println("    @Override");
+                out.println("    public Object newInstance() {");
+                out.println("        return new " + beanName + "();");
+                out.println("    }");
+            }
+            
+            writeBulkMethods(out, beanName, properties);
+            
+            int index = 0;
+            for( Property prop : properties.values() ) {
+                out.println();
+                writeAccessor(out, "Accessor" + index++, beanName, prop);
+            }
+            
+            out.println("}");
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Writes out the readAll and writeAll methods so that the
+     * whole bean is read or written in a single method
+     * 
+     * @param out The writer
+     * @param beanName The name of the bean class
+     * @param properties The properties in index order
+     */
+    private void writeBulkMethods(PrintWriter out, String beanName, Map<String, Property> properties) {
+        out.println();
+        out.println("    @Override");
+        out.println("    public void readAll(Object obj, Object[] into) {");
+        out.println("        checkValues(into);");
+        out.println("        " + beanName + " bean = (" + beanName + ")obj;");
+        int index = 0;
+        for( Property prop : properties.values() ) {
+            if( prop.getter != null ) out.println("        into[" + index + "] = bean." + prop.getter.getSimpleName() + "();");
+            else out.println("        into[" + index + "] = null;");
+            index++;
+        }
+        out.println("    }");
+        
+        out.println();
+        out.println("    @Override");
+        out.println("    public void writeAll(Object obj, Object[] from) {");
+        out.println("        checkValues(from);");
+        out.println("        " + beanName + " bean = (" + beanName + ")obj;");
+        index = 0;
+        for( Property prop : properties.values() ) {
+            if( prop.setter != null ) {
+                boolean primitive = prop.type.getKind().isPrimitive();
+                String castName = primitive ? boxed(prop.type) : erasure(prop.type);
+                String call = "bean." + prop.setter.getSimpleName() + "((" + castName + ")from[" + index + "]);";
+                if( primitive ) out.println("        if( from[" + index + "] != null ) " + call);
+                else out.println("        " + call);
+            }
+            index++;
+        }
+        out.println("    }");
+    }
+    
+    /**
+     * Writes out the accessor class for a single property
+     * 
+     * @param out The writer
+     * @param className The name of the accessor class
+     * @param beanName The name of the bean class
+     * @param prop The property
+     */
+    private void writeAccessor(PrintWriter out, String className, String beanName, Property prop) {
+        String typeName = erasure(prop.type);
+        String castName = prop.type.getKind().isPrimitive() ? boxed(prop.type) : typeName;
+        
+        out.println("    private static final class " + className + " extends org.talframework.util.beans.definition.PropertyAccessor {");
+        out.println("        " + className + "() {");
+        out.println("            super(\"" + prop.name + "\", " + typeName + ".class);");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public boolean canRead() {");
+        out.println("            return " + (prop.getter != null) + ";");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public boolean canWrite() {");
+        out.println("            return " + (prop.setter != null) + ";");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public Object get(Object bean) {");
+        if( prop.getter != null ) out.println("            return ((" + beanName + ")bean)." + prop.getter.getSimpleName() + "();");
+        else out.println("            throw new IllegalArgumentException(\"Cannot read property [" + prop.name + "] as no accessor exists\");");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public void set(Object bean, Object val) {");
+        if( prop.setter != null ) {
+            // Null is ignored for primitives as it is by writeAll
+            String call = "((" + beanName + ")bean)." + prop.setter.getSimpleName() + "((" + castName + ")val);";
+            if( prop.type.getKind().isPrimitive() ) out.println("            if( val != null ) " + call);
+            else out.println("            " + call);
+        }
+        else out.println("            throw new IllegalArgumentException(\"Cannot write property [" + prop.name + "] as no mutator exists\");");
+        out.println("        }");
+        
+        // Primitive versions avoid boxing
+        TypeKind kind = prop.type.getKind();
+        if( kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.DOUBLE || kind == TypeKind.BOOLEAN ) {
+            String suffix = Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1);
+            out.println();
+            out.println("        @Override");
+            out.println("        public boolean hasPrimitiveAccess() {");
+            out.println("            return true;");
+            out.println("        }");
+            if( prop.getter != null ) {
+                out.println();
+                out.println("        @Override");
+                out.println("        public " + typeName + " get" + suffix + "(Object bean) {");
+                out.println("            return ((" + beanName + ")bean)." + prop.getter.getSimpleName() + "();");
+                out.println("        }");
+            }
+            if( prop.setter != null ) {
+                out.println();
+                out.println("        @Override");
+                out.println("        public void set" + suffix + "(Object bean, " + typeName + " val) {");
+                out.println("            ((" + beanName + ")bean)." + prop.setter.getSimpleName() + "(val);");
+                out.println("        }");
+            }
+        }
+        
+        if( prop.getter != null ) {
+            writeMethodLookup(out, "getReadMethod", "readMethod", beanName + ".class, \"" + prop.getter.getSimpleName() + "\"");
+        }
+        if( prop.setter != null ) {
+            writeMethodLookup(out, "getWriteMethod", "writeMethod", beanName + ".class, \"" + prop.setter.getSimpleName() + "\", " + erasure(prop.setter.getParameters().get(0).asType()) + ".class");
+        }
+        
+        out.println("    }");
+    }
+    
+    /**
+     * Writes out a method of the accessor that returns the getter
+     * or setter of the property. The method is only looked up the 
+     * first time it is asked for and then held in a field.
+     * 
+     * @param out The writer
+     * @param methodName The name of the method to write
+     * @param fieldName The name of the field to hold the method in
+     * @param findArgs The arguments to findMethod to look it up with
+     */
+    private void writeMethodLookup(PrintWriter out, String methodName, String fieldName, String findArgs) {
+        out.println();
+        out.println("        private volatile java.lang.reflect.Method " + fieldName + ";");
+        out.println();
+        out.println("        @Override");
+        out.println("        public java.lang.reflect.Method " + methodName + "() {");
+        out.println("            java.lang.reflect.Method ret = " + fieldName + ";");
+        out.println("            if( ret == null ) {");
+        out.println("                // Any race just finds the same method again");
+        out.println("                ret = findMethod(" + findArgs + ");");
+        out.println("                " + fieldName + " = ret;");
+        out.println("            }");
+        out.println("            return ret;");
+        out.println("        }");
+    }
+    
+    /**
+     * @return The package the type is in
+     */
+    private PackageElement getPackage(TypeElement type) {
+        return processingEnv.getElementUtils().getPackageOf(type);
+    }
+    
+    /**
+     * @return The name of the erasure of the type as it should appear in the source
+     */
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+    
+    /**
+     * @return The name of the object equivalent of the primitive type
+     */
+    private String boxed(TypeMirror type) {
+        return processingEnv.getTypeUtils().boxedClass((PrimitiveType)type).getQualifiedName().toString();
+    }
+}
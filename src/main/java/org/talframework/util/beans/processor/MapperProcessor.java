@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import org.talframework.util.beans.mapper.GenerateMapper;
+import org.talframework.util.beans.processor.PropertyFinder.Property;
+
+/**
+ * This annotation processor generates a 
+ * {@link org.talframework.util.beans.mapper.Mapper} for each
+ * type marked with {@link GenerateMapper}. Properties are 
+ * matched as the GenericMapper matches them, but every readable
+ * source property must be mapped to a writable target property
+ * of a compatible type (or be ignored) otherwise an error is
+ * reported, so no property is silently dropped.
+ * 
+ * <p>A source property can be mapped if its type can be 
+ * assigned to the target property, including by boxing or 
+ * unboxing (a null is then not written), or if the target 
+ * property is a String, in which case toString is used.</p>
+ *
+ * @author Tom Spencer
+ */
+@SupportedAnnotationTypes("org.talframework.util.beans.mapper.GenerateMapper")
+public class MapperProcessor extends AbstractProcessor {
+    
+    /** Finds the properties of the beans (created when initialised) */
+    private PropertyFinder finder;
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.finder = new PropertyFinder(processingEnv);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for( Element element : roundEnv.getElementsAnnotatedWith(GenerateMapper.class) ) {
+            TypeElement type = (TypeElement)element;
+            if( !finder.isAccessible(type) ) {
+                error("Mappers cannot be generated for private classes", element);
+                continue;
+            }
+            
+            try {
+                generate(type);
+            }
+            catch( IOException e ) {
+                error("Unable to generate mapper: " + e.getMessage(), element);
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Generates the mapper declared on the given type
+     * 
+     * @param type The annotated type
+     */
+    private void generate(TypeElement type) throws IOException {
+        AnnotationMirror mirror = getMirror(type);
+        Map<String, AnnotationValue> values = getValues(mirror);
+        
+        TypeElement source = getType(type, values.get("source"), "source");
+        TypeElement target = getType(type, values.get("target"), "target");
+        if( source == null || target == null ) return;
+        
+        Map<String, Property> sourceProps = finder.findProperties(source);
+        Map<String, Property> targetProps = finder.findProperties(target);
+        
+        // Name variations and ignored properties must refer to real properties
+        boolean valid = true;
+        Map<String, String> nameVariations = new HashMap<String, String>();
+        for( String variation : getStrings(values.get("nameVariations")) ) {
+            int index = variation.indexOf('=');
+            String from = index > 0 ? variation.substring(0, index).trim() : null;
+            String to = index > 0 ? variation.substring(index + 1).trim() : null;
+            if( from == null || to.length() == 0 ) {
+                error("Invalid name variation [" + variation + "], must be sourceProperty=targetProperty", type);
+                valid = false;
+            }
+            else if( !sourceProps.containsKey(from) ) {
+                error("Name variation [" + variation + "] refers to unknown property [" + from + "] of " + source.getQualifiedName(), type);
+                valid = false;
+            }
+            else {
+                nameVariations.put(from, to);
+            }
+        }
+        
+        Set<String> ignore = new HashSet<String>();
+        for( String name : getStrings(values.get("ignore")) ) {
+            if( !sourceProps.containsKey(name) ) {
+                error("Ignored property [" + name + "] is not a property of " + source.getQualifiedName(), type);
+                valid = false;
+            }
+            ignore.add(name);
+        }
+        
+        // Every readable source property must be mapped
+        StringBuilder body = new StringBuilder();
+        for( Property prop : sourceProps.values() ) {
+            if( prop.getter == null || ignore.contains(prop.name) ) continue;
+            
+            String targetName = nameVariations.containsKey(prop.name) ? nameVariations.get(prop.name) : prop.name;
+            Property targetProp = targetProps.get(targetName);
+            if( targetProp == null || targetProp.setter == null ) {
+                error("Property [" + prop.name + "] of " + source.getQualifiedName() + " cannot be mapped as there is no writable property [" + targetName + "] on " + target.getQualifiedName(), type);
+                valid = false;
+                continue;
+            }
+            
+            String statement = getStatement(prop, targetProp);
+            if( statement == null ) {
+                error("Property [" + prop.name + "] of type " + prop.type + " cannot be mapped to property [" + targetName + "] of type " + targetProp.type, type);
+                valid = false;
+                continue;
+            }
+            body.append(statement);
+        }
+        
+        if( valid ) write(type, source, target, body.toString());
+    }
+    
+    /**
+     * Gets the statement to map the source property to the target
+     * property
+     * 
+     * @param from The source property
+     * @param to The target property
+     * @return The statement or null if the types are not compatible
+     */
+    private String getStatement(Property from, Property to) {
+        Types types = processingEnv.getTypeUtils();
+        String read = "s." + from.getter.getSimpleName() + "()";
+        String write = "t." + to.setter.getSimpleName();
+        
+        if( types.isAssignable(from.type, to.type) ) {
+            if( from.type.getKind().isPrimitive() || !to.type.getKind().isPrimitive() ) return "        " + write + "(" + read + ");\n";
+            
+            // Unboxing, so a null is not written
+            return "        {\n" + 
+                    "            " + erasure(from.type) + " v = " + read + ";\n" +
+                    "            if( v != null ) " + write + "(v);\n" +
+                    "        }\n";
+        }
+        
+        if( isString(to.type) ) {
+            if( from.type.getKind().isPrimitive() ) return "        " + write + "(String.valueOf(" + read + "));\n";
+            return "        {\n" + 
+                    "            Object v = " + read + ";\n" +
+                    "            " + write + "(v != null ? v.toString() : null);\n" +
+                    "        }\n";
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Writes out the mapper
+     * 
+     * @param type The annotated type
+     * @param source The source bean type
+     * @param target The target bean type
+     * @param body The statements mapping the properties
+     */
+    private void write(TypeElement type, TypeElement source, TypeElement target, String body) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String generatedName = binaryName.replace('$', '_') + GenerateMapper.SUFFIX;
+        String simpleName = generatedName.substring(generatedName.lastIndexOf('.') + 1);
+        String sourceName = erasure(source.asType());
+        String targetName = erasure(target.asType());
+        
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(generatedName, type);
+        PrintWriter out = new PrintWriter(file.openWriter());
+        try {
+            if( packageName.length() > 0 ) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            
+            out.println("/**");
+            out.println(" * Mapper from {@link " + sourceName + "} to {@link " + targetName + "}.");
+            out.println(" * This class is generated by the " + getClass().getSimpleName() + ", do not edit.");
+            out.println(" */");
+            out.println("@SuppressWarnings(\"unchecked\")");
+            out.println("public final class " + simpleName + " implements org.talframework.util.beans.mapper.Mapper {");
+            out.println();
+            out.println("    public <Source, Target> Target map(Source source, Class<Target> expected) {");
+            out.println("        if( source == null ) return null;");
+            if( finder.isInstantiable(target) ) {
+                out.println("        " + targetName + " target = new " + targetName + "();");
+                out.println("        map(source, target);");
+                out.println("        return (Target)target;");
+            }
+            else {
+                out.println("        throw new IllegalArgumentException(\"Cannot create new instances of " + targetName + ", map onto an existing instance instead\");");
+            }
+            out.println("    }");
+            out.println();
+            out.println("    public <Source, Target> void map(Source source, Target target) {");
+            out.println("        " + sourceName + " s = (" + sourceName + ")source;");
+            out.println("        " + targetName + " t = (" + targetName + ")target;");
+            out.print(body);
+            out.println("    }");
+            out.println("}");
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Gets a class from the annotation, checking the generated
+     * mapper will be able to use it
+     * 
+     * @param type The annotated type
+     * @param value The value
+     * @param name The name of the annotation member
+     * @return The class or null if it cannot be used
+     */
+    private TypeElement getType(TypeElement type, AnnotationValue value, String name) {
+        TypeMirror mirror = value != null && value.getValue() instanceof TypeMirror ? (TypeMirror)value.getValue() : null;
+        if( mirror == null || mirror.getKind() != TypeKind.DECLARED ) {
+            error("The " + name + " of the mapper must be a class", type);
+            return null;
+        }
+        
+        TypeElement ret = (TypeElement)((DeclaredType)mirror).asElement();
+        boolean samePackage = processingEnv.getElementUtils().getPackageOf(ret).equals(processingEnv.getElementUtils().getPackageOf(type));
+        if( !finder.isAccessible(ret) || (!ret.getModifiers().contains(Modifier.PUBLIC) && !samePackage) ) {
+            error("The " + name + " of the mapper " + ret.getQualifiedName() + " is not accessible to the generated mapper", type);
+            return null;
+        }
+        return ret;
+    }
+    
+    /**
+     * @return The mirror of the GenerateMapper annotation on the type
+     */
+    private AnnotationMirror getMirror(TypeElement type) {
+        for( AnnotationMirror mirror : type.getAnnotationMirrors() ) {
+            TypeElement annotation = (TypeElement)mirror.getAnnotationType().asElement();
+            if( annotation.getQualifiedName().contentEquals(GenerateMapper.class.getName()) ) return mirror;
+        }
+        throw new IllegalStateException("Type is not annotated with GenerateMapper: " + type);
+    }
+    
+    /**
+     * @return The values of the annotation (including defaults) by member name
+     */
+    private Map<String, AnnotationValue> getValues(AnnotationMirror mirror) {
+        Map<String, AnnotationValue> ret = new HashMap<String, AnnotationValue>();
+        for( Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet() ) {
+            ret.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+        }
+        return ret;
+    }
+    
+    /**
+     * @return The strings held in an array annotation value
+     */
+    private String[] getStrings(AnnotationValue value) {
+        if( value == null || !(value.getValue() instanceof List<?>) ) return new String[0];
+        
+        List<?> list = (List<?>)value.getValue();
+        String[] ret = new String[list.size()];
+        for( int i = 0 ; i < ret.length ; i++ ) ret[i] = String.valueOf(((AnnotationValue)list.get(i)).getValue());
+        return ret;
+    }
+    
+    /**
+     * @return True if the type is java.lang.String
+     */
+    private boolean isString(TypeMirror type) {
+        if( type.getKind() != TypeKind.DECLARED ) return false;
+        return ((TypeElement)((DeclaredType)type).asElement()).getQualifiedName().contentEquals(String.class.getName());
+    }
+    
+    /**
+     * @return The name of the erasure of the type as it should appear in the source
+     */
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+    
+    /**
+     * Reports an error against the annotated type
+     */
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+    }
+}
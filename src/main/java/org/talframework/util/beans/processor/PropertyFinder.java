@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.processor;
+
+import java.beans.Introspector;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+/**
+ * This class finds the properties of a bean at compile time,
+ * and the other details of the bean class the annotation
+ * processors in this package need to generate code for it.
+ *
+ * @author Tom Spencer
+ */
+final class PropertyFinder {
+    
+    /** The environment of the processor */
+    private final ProcessingEnvironment env;
+    
+    /**
+     * Constructs the finder
+     * 
+     * @param env The environment of the processor
+     */
+    public PropertyFinder(ProcessingEnvironment env) {
+        this.env = env;
+    }
+    
+    /**
+     * Finds all the properties of the bean using the same
+     * rules as the JavaBeans {@link Introspector}.
+     * 
+     * @param type The bean type
+     * @return The properties in name order
+     */
+    public Map<String, Property> findProperties(TypeElement type) {
+        Map<String, Property> ret = new TreeMap<String, Property>();
+        DeclaredType declaredType = (DeclaredType)type.asType();
+        Iterable<ExecutableElement> methods = ElementFilter.methodsIn(env.getElementUtils().getAllMembers(type));
+        
+        // Getters first
+        for( ExecutableElement method : methods ) {
+            if( !isCandidate(method) || method.getParameters().size() != 0 ) continue;
+            
+            TypeMirror returnType = ((ExecutableType)env.getTypeUtils().asMemberOf(declaredType, method)).getReturnType();
+            String name = method.getSimpleName().toString();
+            String propName = null;
+            if( name.startsWith("get") && name.length() > 3 && returnType.getKind() != TypeKind.VOID ) propName = Introspector.decapitalize(name.substring(3));
+            else if( name.startsWith("is") && name.length() > 2 && returnType.getKind() == TypeKind.BOOLEAN ) propName = Introspector.decapitalize(name.substring(2));
+            
+            if( propName == null || propName.equals("class") ) continue;
+            if( ret.containsKey(propName) && !name.startsWith("is") ) continue; // is takes precedence
+            
+            Property prop = new Property(propName, returnType);
+            prop.getter = method;
+            ret.put(propName, prop);
+        }
+        
+        // Then the setters
+        for( ExecutableElement method : methods ) {
+            if( !isCandidate(method) || method.getParameters().size() != 1 || method.getReturnType().getKind() != TypeKind.VOID ) continue;
+            
+            String name = method.getSimpleName().toString();
+            if( !name.startsWith("set") || name.length() <= 3 ) continue;
+            
+            TypeMirror paramType = ((ExecutableType)env.getTypeUtils().asMemberOf(declaredType, method)).getParameterTypes().get(0);
+            String propName = Introspector.decapitalize(name.substring(3));
+            
+            Property prop = ret.get(propName);
+            if( prop == null ) {
+                prop = new Property(propName, paramType);
+                ret.put(propName, prop);
+            }
+            else if( !env.getTypeUtils().isSameType(prop.type, paramType) ) {
+                continue;
+            }
+            
+            if( prop.setter == null ) prop.setter = method;
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * @return True if the method could be a getter or setter
+     */
+    private boolean isCandidate(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        return modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.STATIC);
+    }
+    
+    /**
+     * @return True if the generated class can create instances of the type
+     */
+    public boolean isInstantiable(TypeElement type) {
+        if( type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT) ) return false;
+        if( type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC) ) return false;
+        
+        for( ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements()) ) {
+            if( constructor.getParameters().size() == 0 && !constructor.getModifiers().contains(Modifier.PRIVATE) ) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @return True if the type and any class it is nested in is not private
+     */
+    public boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while( element instanceof TypeElement ) {
+            if( element.getModifiers().contains(Modifier.PRIVATE) ) return false;
+            element = element.getEnclosingElement();
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Holds a single property found on the bean
+     */
+    static final class Property {
+        final String name;
+        final TypeMirror type;
+        ExecutableElement getter;
+        ExecutableElement setter;
+        
+        public Property(String name, TypeMirror type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+}
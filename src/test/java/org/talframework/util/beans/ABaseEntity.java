@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This generic bean is a base class for {@link AnEntity}
+ * and is used to test the resolution of the generic types
+ * of its properties against the subclass.
+ *
+ * @author Tom Spencer
+ */
+public abstract class ABaseEntity<T> {
+
+    private List<T> items;
+    private Map<String, T> lookup;
+    
+    /**
+     * @return the items
+     */
+    public List<T> getItems() {
+        return items;
+    }
+    /**
+     * Setter for the items field
+     *
+     * @param items the items to set
+     */
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+    
+    /**
+     * @return the lookup
+     */
+    public Map<String, T> getLookup() {
+        return lookup;
+    }
+    /**
+     * Setter for the lookup field
+     *
+     * @param lookup the lookup to set
+     */
+    public void setLookup(Map<String, T> lookup) {
+        this.lookup = lookup;
+    }
+}
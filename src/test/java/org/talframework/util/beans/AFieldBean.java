@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.talframework.util.beans.definition.FieldAccess;
+
+/**
+ * This bean exposes most of its state as fields rather
+ * than through getters and setters. It is used to test
+ * the {@link FieldAccess} mode of the bean definitions.
+ *
+ * @author Tom Spencer
+ */
+@FieldAccess
+public class AFieldBean {
+
+    public String stringVal = "String";
+    int intVal = 5;
+    protected double dblVal = 1.5;
+    public final long id = 99L;
+    public List<String> listVal = new ArrayList<String>();
+    public static String staticVal = "Static";
+    public transient String transientVal = "Transient";
+    @SuppressWarnings("unused")
+    private String privateVal = "Private";
+    
+    private String propertyVal = "Property";
+    
+    /**
+     * @return the propertyVal
+     */
+    public String getPropertyVal() {
+        return propertyVal;
+    }
+    /**
+     * Setter for the propertyVal field
+     *
+     * @param propertyVal the propertyVal to set
+     */
+    public void setPropertyVal(String propertyVal) {
+        this.propertyVal = propertyVal;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.talframework.util.beans.definition.GenerateDefinition;
+
+/**
+ * This bean has its definition generated at compile time
+ * so that the generated definitions can be tested.
+ *
+ * @author Tom Spencer
+ */
+@GenerateDefinition
+public class AGeneratedBean {
+
+    private String stringVal = "String";
+    private String readOnlyVal = "Default";
+    private int intVal = 5;
+    private long lngVal = 6;
+    private double dblVal = 7.5;
+    private boolean boolVal = true;
+    private List<String> listVal = new ArrayList<String>();
+    
+    /**
+     * @return the stringVal
+     */
+    public String getStringVal() {
+        return stringVal;
+    }
+
+    /**
+     * Setter for the stringVal field
+     *
+     * @param stringVal the stringVal to set
+     */
+    public void setStringVal(String stringVal) {
+        this.stringVal = stringVal;
+    }
+
+    /**
+     * @return the readOnlyVal
+     */
+    public String getReadOnlyVal() {
+        return readOnlyVal;
+    }
+
+    /**
+     * @return the intVal
+     */
+    public int getIntVal() {
+        return intVal;
+    }
+
+    /**
+     * Setter for the intVal field
+     *
+     * @param intVal the intVal to set
+     */
+    public void setIntVal(int intVal) {
+        this.intVal = intVal;
+    }
+
+    /**
+     * @return the lngVal
+     */
+    public long getLngVal() {
+        return lngVal;
+    }
+
+    /**
+     * Setter for the lngVal field
+     *
+     * @param lngVal the lngVal to set
+     */
+    public void setLngVal(long lngVal) {
+        this.lngVal = lngVal;
+    }
+
+    /**
+     * @return the dblVal
+     */
+    public double getDblVal() {
+        return dblVal;
+    }
+
+    /**
+     * Setter for the dblVal field
+     *
+     * @param dblVal the dblVal to set
+     */
+    public void setDblVal(double dblVal) {
+        this.dblVal = dblVal;
+    }
+
+    /**
+     * @return the boolVal
+     */
+    public boolean isBoolVal() {
+        return boolVal;
+    }
+
+    /**
+     * Setter for the boolVal field
+     *
+     * @param boolVal the boolVal to set
+     */
+    public void setBoolVal(boolean boolVal) {
+        this.boolVal = boolVal;
+    }
+
+    /**
+     * @return the listVal
+     */
+    public List<String> getListVal() {
+        return listVal;
+    }
+
+    /**
+     * Setter for the listVal field
+     *
+     * @param listVal the listVal to set
+     */
+    public void setListVal(List<String> listVal) {
+        this.listVal = listVal;
+    }
+}
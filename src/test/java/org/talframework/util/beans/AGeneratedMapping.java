@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+import org.talframework.util.beans.mapper.GenerateMapper;
+
+/**
+ * This type declares a mapper to be generated at compile
+ * time so that the generated mappers can be tested.
+ *
+ * @author Tom Spencer
+ */
+@GenerateMapper(source=AnotherBean.class, target=NearlySimilarBean.class, nameVariations="stringVal=differentVal", ignore="readOnlyVal")
+public interface AGeneratedMapping {
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+/**
+ * This bean extends {@link AnotherBean} adding a property
+ * of its own and overriding one of the inherited ones. It
+ * is used to test the sharing of property definitions
+ * between a class and its superclass.
+ *
+ * @author Tom Spencer
+ */
+public class ASubBean extends AnotherBean {
+
+    private String subVal = "Sub";
+    
+    /**
+     * @return the subVal
+     */
+    public String getSubVal() {
+        return subVal;
+    }
+    /**
+     * Setter for the subVal field
+     *
+     * @param subVal the subVal to set
+     */
+    public void setSubVal(String subVal) {
+        this.subVal = subVal;
+    }
+    
+    /**
+     * Overridden to test this is not shared
+     */
+    @Override
+    public String getStringVal() {
+        return "Sub" + super.getStringVal();
+    }
+}
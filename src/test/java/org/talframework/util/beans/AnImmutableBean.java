@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * This bean is immutable apart from one property and can
+ * only be created by passing its properties to the
+ * constructor. It has properties in common with 
+ * {@link AnotherBean} to test mapping into it.
+ *
+ * @author Tom Spencer
+ */
+public class AnImmutableBean {
+
+    private final String stringVal;
+    private final Integer intVal2;
+    private final int count;
+    private Short shrVal2;
+    
+    @ConstructorProperties({"stringVal", "intVal2", "count"})
+    public AnImmutableBean(String stringVal, Integer intVal2, int count) {
+        this.stringVal = stringVal;
+        this.intVal2 = intVal2;
+        this.count = count;
+    }
+    
+    /**
+     * @return the stringVal
+     */
+    public String getStringVal() {
+        return stringVal;
+    }
+    
+    /**
+     * @return the intVal2
+     */
+    public Integer getIntVal2() {
+        return intVal2;
+    }
+    
+    /**
+     * @return the count
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * @return the shrVal2
+     */
+    public Short getShrVal2() {
+        return shrVal2;
+    }
+    /**
+     * Setter for the shrVal2 field
+     *
+     * @param shrVal2 the shrVal2 to set
+     */
+    public void setShrVal2(Short shrVal2) {
+        this.shrVal2 = shrVal2;
+    }
+}
@@ -22,10 +22,16 @@
  */
 package org.talframework.util.beans.cloner;
 
+import java.beans.ConstructorProperties;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
+import org.talframework.util.beans.AComplexBean;
+import org.talframework.util.beans.AnImmutableBean;
 import org.talframework.util.beans.AnotherBean;
+import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.definition.BeanDefinitionsSingleton;
 
 /**
  * This class tests the generic cloner, both functionally
@@ -47,6 +53,112 @@ public class TestGenericCloner {
         Assert.assertEquals("ToClone", clone.getStringVal());
     }
     
+    @Test
+    public void generatedAccessors() {
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        singleton.setGenerateAccessors(true);
+        singleton.invalidate(AComplexBean.class);
+        try {
+            BeanDefinition def = singleton.getDefinition(AComplexBean.class);
+            Assert.assertTrue(def.getPropertyHandle("intVal").hasPrimitiveAccess());
+            Assert.assertTrue(def.getPropertyHandle("boolVal").hasPrimitiveAccess());
+            Assert.assertFalse(def.getPropertyHandle("stringVal").hasPrimitiveAccess());
+            
+            AComplexBean bean = new AComplexBean();
+            bean.setIntVal(5);
+            bean.setLngVal(6);
+            bean.setDblVal(7.5);
+            bean.setBoolVal(false);
+            bean.setStringVal("ToClone");
+            AComplexBean clone = new GenericCloner().shallowClone(bean);
+            
+            Assert.assertEquals(5, clone.getIntVal());
+            Assert.assertEquals(6, clone.getLngVal());
+            Assert.assertEquals(7.5, clone.getDblVal());
+            Assert.assertFalse(clone.isBoolVal());
+            Assert.assertEquals("ToClone", clone.getStringVal());
+        }
+        finally {
+            singleton.setGenerateAccessors(false);
+            singleton.invalidate(AComplexBean.class);
+        }
+    }
+    
+    public static class AMergedBean {
+        private String stringVal;
+        private String otherVal;
+        private boolean stringValSet;
+        private boolean otherValSet;
+        
+        public String getStringVal() { return stringVal; }
+        public void setStringVal(String stringVal) { this.stringVal = stringVal; this.stringValSet = true; }
+        public boolean isStringValSet() { return stringValSet; }
+        public String getOtherVal() { 
+            if( !otherValSet ) throw new IllegalStateException("Property read when it has not been set");
+            return otherVal;
+        }
+        public void setOtherVal(String otherVal) { this.otherVal = otherVal; this.otherValSet = true; }
+        public boolean isOtherValSet() { return otherValSet; }
+    }
+    
+    @Test
+    public void merge() {
+        GenericMerger merger = new GenericMerger();
+        
+        AMergedBean bean = new AMergedBean();
+        bean.setStringVal("Merged");
+        AMergedBean target = new AMergedBean();
+        target.setOtherVal("Kept");
+        for( int i = 0 ; i < 2 ; i++ ) merger.shallowClone(bean, target);
+        
+        Assert.assertEquals("Merged", target.getStringVal());
+        Assert.assertEquals("Kept", target.getOtherVal());
+    }
+    
+    public static class AMergedImmutableBean {
+        private final String stringVal;
+        private final String otherVal;
+        
+        @ConstructorProperties({"stringVal", "otherVal"})
+        public AMergedImmutableBean(String stringVal, String otherVal) { this.stringVal = stringVal; this.otherVal = otherVal; }
+        
+        public String getStringVal() { return stringVal; }
+        public boolean isStringValSet() { return stringVal != null; }
+        public String getOtherVal() { 
+            if( otherVal == null ) throw new IllegalStateException("Property read when it has not been set");
+            return otherVal;
+        }
+        public boolean isOtherValSet() { return otherVal != null; }
+    }
+    
+    @Test
+    public void mergeImmutable() {
+        GenericMerger merger = new GenericMerger();
+        
+        AMergedImmutableBean bean = new AMergedImmutableBean("Merged", null);
+        for( int i = 0 ; i < 2 ; i++ ) {
+            AMergedImmutableBean clone = merger.shallowClone(bean);
+            Assert.assertNotSame(bean, clone);
+            Assert.assertEquals("Merged", clone.getStringVal());
+            Assert.assertFalse(clone.isOtherValSet());
+        }
+    }
+    
+    @Test
+    public void immutable() {
+        GenericCloner cloner = new GenericCloner();
+        
+        AnImmutableBean bean = new AnImmutableBean("ToClone", 5, 7);
+        bean.setShrVal2((short)3);
+        AnImmutableBean clone = cloner.shallowClone(bean);
+        
+        Assert.assertNotSame(bean, clone);
+        Assert.assertEquals("ToClone", clone.getStringVal());
+        Assert.assertEquals(Integer.valueOf(5), clone.getIntVal2());
+        Assert.assertEquals(7, clone.getCount());
+        Assert.assertEquals(Short.valueOf((short)3), clone.getShrVal2());
+    }
+    
     @Test
     public void performance() throws Exception {
         Runnable cmd = new Runnable() {
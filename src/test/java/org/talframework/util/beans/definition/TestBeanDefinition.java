@@ -22,14 +22,26 @@
  */
 package org.talframework.util.beans.definition;
 
+import java.beans.ConstructorProperties;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.ParameterizedType;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 import org.talframework.util.beans.AComplexBean;
+import org.talframework.util.beans.AFieldBean;
+import org.talframework.util.beans.AnEntity;
+import org.talframework.util.beans.AnImmutableBean;
+import org.talframework.util.beans.ASubBean;
 import org.talframework.util.beans.AnotherBean;
 import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.NearlySimilar;
+import org.talframework.util.beans.PropertyHandle;
 
 public class TestBeanDefinition {
 
@@ -88,12 +100,365 @@ public class TestBeanDefinition {
         Assert.assertTrue(def.canWrite("setOnlyVal"));
     }
     
+    @Test
+    public void propertyGroups() {
+        BeanDefinition def = new BeanDefinitionImpl(AnotherBean.class);
+        
+        Assert.assertEquals("readOnlyVal", def.getReadOnlyProperties().iterator().next());
+        Assert.assertEquals("setOnlyVal", def.getSetOnlyProperties().iterator().next());
+        Assert.assertFalse(def.getBalancedProperties().contains("readOnlyVal"));
+        Assert.assertTrue(def.getProperties().contains("setOnlyVal"));
+        Assert.assertFalse(def.hasProperty(null));
+        Assert.assertFalse(def.hasProperty("invalid"));
+        
+        for( String name : def.getProperties() ) {
+            Assert.assertEquals(name, def.getPropertyHandle(name).getName());
+        }
+        
+        Assert.assertEquals(def, new BeanDefinitionImpl(AnotherBean.class));
+    }
+    
+    @Test
+    public void ordinals() throws Exception {
+        BeanDefinition def = new BeanDefinitionImpl(AFieldBean.class, 
+                new FieldPropertyAccessor(AFieldBean.class.getField("stringVal")),
+                new FieldPropertyAccessor(AFieldBean.class.getField("listVal")));
+        
+        Assert.assertEquals(Arrays.asList("listVal", "stringVal"), def.getProperties());
+        Assert.assertEquals(0, def.getPropertyIndex("listVal"));
+        Assert.assertEquals(1, def.getPropertyIndex("stringVal"));
+        Assert.assertEquals(-1, def.getPropertyIndex("invalid"));
+        Assert.assertEquals(1, def.getPropertyHandle("stringVal").getIndex());
+        
+        def = new BeanDefinitionImpl(AnotherBean.class);
+        int i = 0;
+        for( String name : def.getProperties() ) {
+            Assert.assertEquals(i++, def.getPropertyIndex(name));
+        }
+    }
+    
+    @Test
+    public void deferred() throws Exception {
+        BeanDefinitionImpl superDef = new BeanDefinitionImpl(AnotherBean.class);
+        DeferredPropertyAccessor accessor = new DeferredPropertyAccessor("dblVal2", Double.class, 
+                AnotherBean.class.getMethod("getDblVal2"), AnotherBean.class.getMethod("setDblVal2", Double.class), superDef, null);
+        
+        Assert.assertTrue(accessor.canRead());
+        Assert.assertTrue(accessor.canWrite());
+        Assert.assertSame(accessor.resolve(), accessor.resolve());
+        Assert.assertSame(superDef.getInheritedAccessor(accessor), accessor.resolve());
+        
+        AnotherBean bean = new AnotherBean();
+        accessor.set(bean, 5.5);
+        Assert.assertEquals(5.5, accessor.get(bean));
+    }
+
+    public static class FailingBean {
+        public String getFailVal() { throw new IllegalStateException("Read"); }
+        public void setFailVal(String val) { throw new IllegalStateException("Write"); }
+        public String getCheckedVal() throws Exception { throw new Exception("Checked"); }
+    }
+
+    @Test
+    public void methodAccessor() throws Exception {
+        PropertyAccessor accessor = new MethodPropertyAccessor("stringVal", String.class,
+                AComplexBean.class.getMethod("getStringVal"), AComplexBean.class.getMethod("setStringVal", String.class));
+        Assert.assertTrue(accessor.canRead());
+        Assert.assertTrue(accessor.canWrite());
+        Assert.assertEquals(AComplexBean.class.getMethod("getStringVal"), accessor.getReadMethod());
+
+        AComplexBean bean = new AComplexBean();
+        Assert.assertEquals("String", accessor.get(bean));
+        accessor.set(bean, "Changed");
+        Assert.assertEquals("Changed", bean.getStringVal());
+
+        accessor = new MethodPropertyAccessor("intVal", int.class,
+                AComplexBean.class.getMethod("getIntVal"), AComplexBean.class.getMethod("setIntVal", int.class));
+        accessor.setInt(bean, 5);
+        Assert.assertEquals(5, accessor.getInt(bean));
+
+        accessor = new MethodPropertyAccessor("readOnlyVal", String.class, AComplexBean.class.getMethod("getReadOnlyVal"), null);
+        Assert.assertTrue(accessor.canRead());
+        Assert.assertFalse(accessor.canWrite());
+        Assert.assertNull(accessor.getWriteMethod());
+        try {
+            accessor.set(bean, "Changed");
+            Assert.fail("Expected the write to fail");
+        }
+        catch( IllegalArgumentException e ) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void methodAccessorExceptions() throws Exception {
+        PropertyAccessor accessor = new MethodPropertyAccessor("failVal", String.class,
+                FailingBean.class.getMethod("getFailVal"), FailingBean.class.getMethod("setFailVal", String.class));
+        FailingBean bean = new FailingBean();
+
+        try {
+            accessor.get(bean);
+            Assert.fail("Expected the read to fail");
+        }
+        catch( IllegalStateException e ) {
+            Assert.assertEquals("Read", e.getMessage());
+        }
+
+        try {
+            accessor.set(bean, "Changed");
+            Assert.fail("Expected the write to fail");
+        }
+        catch( IllegalStateException e ) {
+            Assert.assertEquals("Write", e.getMessage());
+        }
+
+        accessor = new MethodPropertyAccessor("checkedVal", String.class, FailingBean.class.getMethod("getCheckedVal"), null);
+        try {
+            accessor.get(bean);
+            Assert.fail("Expected the read to fail");
+        }
+        catch( RuntimeException e ) {
+            Assert.assertEquals("Checked", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void generatedAccessors() throws Exception {
+        AccessorGenerator generator = new AccessorGenerator(FailingBean.class, null);
+        DeferredPropertyAccessor failVal = new DeferredPropertyAccessor("failVal", String.class,
+                FailingBean.class.getMethod("getFailVal"), FailingBean.class.getMethod("setFailVal", String.class), null, generator);
+        DeferredPropertyAccessor checkedVal = new DeferredPropertyAccessor("checkedVal", String.class,
+                FailingBean.class.getMethod("getCheckedVal"), null, null, generator);
+        
+        Assert.assertTrue(failVal.resolve() instanceof GeneratedPropertyAccessor);
+        Assert.assertEquals(FailingBean.class.getMethod("getFailVal"), failVal.resolve().getReadMethod());
+        Assert.assertTrue(checkedVal.resolve() instanceof MethodPropertyAccessor);
+        
+        try {
+            failVal.get(new FailingBean());
+            Assert.fail("Expected the read to fail");
+        }
+        catch( IllegalStateException e ) {
+            Assert.assertEquals("Read", e.getMessage());
+        }
+        
+        BeanDefinitionImpl superDef = new BeanDefinitionImpl(AnotherBean.class, null, false, true);
+        BeanDefinitionImpl def = new BeanDefinitionImpl(ASubBean.class, superDef, false, true);
+        Assert.assertEquals(superDef.getPropertyHandle("dblVal2"), def.getPropertyHandle("dblVal2"));
+        
+        ASubBean bean = new ASubBean();
+        Assert.assertEquals("SubString", def.read(bean, "stringVal"));
+        Assert.assertEquals(bean.getDblVal2(), def.read(bean, "dblVal2"));
+        def.write(bean, "subVal", "Changed");
+        def.write(bean, "intVal2", null);
+        Assert.assertEquals("Changed", bean.getSubVal());
+        Assert.assertNull(bean.getIntVal2());
+        
+        def = new BeanDefinitionImpl(AComplexBean.class, null, false, true);
+        AComplexBean complex = new AComplexBean();
+        def.write(complex, "intVal", 5);
+        def.write(complex, "arrayVal", new String[]{"Changed"});
+        Assert.assertEquals(5, def.read(complex, "intVal"));
+        Assert.assertEquals("Changed", ((String[])def.read(complex, "arrayVal"))[0]);
+        try {
+            def.write(complex, "intVal", null);
+            Assert.fail("Expected the write to fail");
+        }
+        catch( IllegalArgumentException e ) {
+            // Expected, as when written reflectively
+        }
+        try {
+            def.write(complex, "stringVal", 5);
+            Assert.fail("Expected the write to fail");
+        }
+        catch( IllegalArgumentException e ) {
+            // Expected, as when written reflectively
+        }
+    }
+    
+    @Test
+    public void inherited() {
+        BeanDefinitionImpl superDef = new BeanDefinitionImpl(AnotherBean.class);
+        BeanDefinitionImpl def = new BeanDefinitionImpl(ASubBean.class, superDef);
+        
+        Assert.assertEquals(13, def.getProperties().size());
+        Assert.assertEquals(superDef.getPropertyHandle("dblVal2"), def.getPropertyHandle("dblVal2"));
+        Assert.assertFalse(superDef.getPropertyHandle("stringVal").equals(def.getPropertyHandle("stringVal")));
+        
+        ASubBean bean = new ASubBean();
+        Assert.assertEquals("SubString", def.read(bean, "stringVal"));
+        Assert.assertEquals("Sub", def.read(bean, "subVal"));
+        Assert.assertEquals(bean.getDblVal2(), def.read(bean, "dblVal2"));
+    }
+    
+    @Test
+    public void fieldAccess() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AFieldBean.class);
+        Assert.assertEquals(Arrays.asList("dblVal", "id", "intVal", "listVal", "propertyVal", "stringVal"), def.getProperties());
+        Assert.assertEquals(Arrays.asList("id"), def.getReadOnlyProperties());
+        Assert.assertEquals(List.class, def.getPropertyType("listVal"));
+        Assert.assertTrue(def.getPropertyGenericType("listVal") instanceof ParameterizedType);
+        Assert.assertFalse(new BeanDefinitionImpl(AFieldBean.class).hasProperty("stringVal"));
+        
+        AFieldBean bean = new AFieldBean();
+        def.write(bean, "stringVal", "Changed");
+        def.writeInt(bean, "intVal", 10);
+        def.writeDouble(bean, "dblVal", 2.5);
+        def.write(bean, "propertyVal", "Set");
+        Assert.assertEquals("Changed", bean.stringVal);
+        Assert.assertEquals(10, def.readInt(bean, "intVal"));
+        Assert.assertEquals(2.5, def.readDouble(bean, "dblVal"));
+        Assert.assertEquals(99L, def.readLong(bean, "id"));
+        Assert.assertEquals("Set", bean.getPropertyVal());
+    }
+    
+    @Test
+    public void bulk() {
+        BeanDefinition def = new BeanDefinitionImpl(AnotherBean.class);
+        
+        AnotherBean bean = new AnotherBean();
+        bean.setStringVal("Bulk");
+        Object[] values = new Object[def.getPropertyHandles().size()];
+        def.readAll(bean, values);
+        Assert.assertEquals("Bulk", values[def.getPropertyHandle("stringVal").getIndex()]);
+        Assert.assertNull(values[def.getPropertyHandle("setOnlyVal").getIndex()]);
+        
+        AnotherBean copy = new AnotherBean();
+        copy.setStringVal("Overwritten");
+        copy.setDblVal2(1.0);
+        def.writeAll(copy, values);
+        Assert.assertEquals("Bulk", copy.getStringVal());
+        Assert.assertEquals(bean.getDblVal2(), copy.getDblVal2());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void failBulkIfTooFewValues() {
+        new BeanDefinitionImpl(AnotherBean.class).readAll(new AnotherBean(), new Object[1]);
+    }
+    
+    @Test
+    public void genericTypes() {
+        BeanDefinition def = new BeanDefinitionImpl(AComplexBean.class);
+        Assert.assertEquals(String.class, def.getPropertyElementType("arrayVal"));
+        Assert.assertEquals(AnotherBean.class, def.getPropertyElementType("objectCollectionVal"));
+        Assert.assertNull(def.getPropertyElementType("stringVal"));
+        
+        def = new BeanDefinitionImpl(AnotherBean.class);
+        Assert.assertEquals(String.class, def.getPropertyKeyType("mapVal"));
+        Assert.assertEquals(String.class, def.getPropertyValueType("mapVal"));
+        Assert.assertNull(def.getPropertyKeyType("collectionVal"));
+    }
+    
+    @Test
+    public void genericTypesFromSuperclass() {
+        BeanDefinition def = new BeanDefinitionImpl(AnEntity.class);
+        Assert.assertEquals(AnotherBean.class, def.getPropertyElementType("items"));
+        Assert.assertEquals(String.class, def.getPropertyKeyType("lookup"));
+        Assert.assertEquals(AnotherBean.class, def.getPropertyValueType("lookup"));
+    }
+    
+    @Test
+    public void annotations() {
+        BeanDefinition def = new BeanDefinitionImpl(AnnotatedBean.class);
+        
+        Assert.assertNotNull(def.getReadAnnotation("getterVal", Marker.class));
+        Assert.assertNull(def.getWriteAnnotation("getterVal", Marker.class));
+        Assert.assertNotNull(def.getAnnotation("fieldVal", Marker.class));
+        Assert.assertNull(def.getReadAnnotation("fieldVal", Marker.class));
+        Assert.assertTrue(def.hasAnnotation("fieldVal", Marker.class));
+        Assert.assertTrue(def.hasAnnotation("fieldVal", MetaMarker.class));
+        Assert.assertFalse(def.hasAnnotation("plainVal", Marker.class));
+        Assert.assertFalse(def.hasAnnotation("plainVal", Retention.class));
+        
+        Assert.assertEquals(Arrays.asList("fieldVal", "getterVal"), def.getPropertiesWithAnnotation(MetaMarker.class));
+        Assert.assertTrue(def.getPropertiesWithAnnotation(Deprecated.class).isEmpty());
+    }
+    
     @Test
     public void create() {
         BeanDefinition def = new BeanDefinitionImpl(AnotherBean.class);
         Assert.assertNotNull(def.newInstance());
     }
     
+    @Test
+    public void createInterface() {
+        BeanDefinition def = new BeanDefinitionImpl(NearlySimilar.class);
+        Object first = def.newInstance();
+        Object second = def.newInstance();
+        
+        Assert.assertTrue(first instanceof NearlySimilar);
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first.getClass(), second.getClass());
+    }
+    
+    @Test(expected=RuntimeException.class)
+    public void failCreateWithoutDefaultConstructor() {
+        new BeanDefinitionImpl(Integer.class).newInstance();
+    }
+    
+    public static class ASingleton {
+        public static final ASingleton INSTANCE = new ASingleton("Single");
+        private final String name;
+        
+        private ASingleton() { this.name = null; }
+        @ConstructorProperties("name")
+        private ASingleton(String name) { this.name = name; }
+        public String getName() { return name; }
+    }
+    
+    @Test
+    public void createOnlyWithPublicConstructors() {
+        BeanDefinition def = new BeanDefinitionImpl(ASingleton.class);
+        Assert.assertTrue(def.getConstructorProperties().isEmpty());
+        
+        try {
+            def.newInstance();
+            Assert.fail("Expected a singleton to not be created");
+        }
+        catch( RuntimeException e ) {
+            // Expected
+        }
+    }
+    
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface MetaMarker {
+    }
+    
+    @MetaMarker
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Marker {
+    }
+    
+    public static class AnnotatedBean {
+        @Marker
+        private String fieldVal;
+        private String getterVal;
+        private String plainVal;
+        
+        public String getFieldVal() { return fieldVal; }
+        public void setFieldVal(String fieldVal) { this.fieldVal = fieldVal; }
+        @Marker
+        public String getGetterVal() { return getterVal; }
+        public void setGetterVal(String getterVal) { this.getterVal = getterVal; }
+        public String getPlainVal() { return plainVal; }
+        public void setPlainVal(String plainVal) { this.plainVal = plainVal; }
+    }
+    
+    @Test
+    public void createFromProperties() {
+        BeanDefinition def = new BeanDefinitionImpl(AnImmutableBean.class);
+        Assert.assertEquals(Arrays.asList("stringVal", "intVal2", "count"), def.getConstructorProperties());
+        Assert.assertTrue(new BeanDefinitionImpl(AnotherBean.class).getConstructorProperties().isEmpty());
+        
+        Object[] values = new Object[def.getPropertyHandles().size()];
+        values[def.getPropertyHandle("stringVal").getIndex()] = "Created";
+        values[def.getPropertyHandle("count").getIndex()] = 3;
+        AnImmutableBean bean = (AnImmutableBean)def.newInstance(values);
+        Assert.assertEquals("Created", bean.getStringVal());
+        Assert.assertNull(bean.getIntVal2());
+        Assert.assertEquals(3, bean.getCount());
+    }
+    
     @Test
     public void read() {
         BeanDefinition def = new BeanDefinitionImpl(AComplexBean.class);
@@ -111,6 +476,79 @@ public class TestBeanDefinition {
         Assert.assertEquals("Changed", bean.getStringVal());
     }
     
+    @Test
+    public void handles() {
+        BeanDefinition def = new BeanDefinitionImpl(AComplexBean.class);
+        Assert.assertEquals(14, def.getPropertyHandles().size());
+        Assert.assertNull(def.getPropertyHandle("invalid"));
+        
+        PropertyHandle handle = def.getPropertyHandle("stringVal");
+        Assert.assertNotNull(handle);
+        Assert.assertEquals("stringVal", handle.getName());
+        Assert.assertEquals(String.class, handle.getType());
+        Assert.assertTrue(handle == def.getPropertyHandles().get(handle.getIndex()));
+        
+        AComplexBean bean = new AComplexBean();
+        Assert.assertEquals("String", handle.read(bean));
+        handle.write(bean, "Changed");
+        Assert.assertEquals("Changed", bean.getStringVal());
+        
+        Assert.assertTrue(def.getPropertyHandle("readOnlyVal").canRead());
+        Assert.assertFalse(def.getPropertyHandle("readOnlyVal").canWrite());
+    }
+    
+    @Test
+    public void primitives() {
+        BeanDefinition def = new BeanDefinitionImpl(AComplexBean.class);
+        
+        AComplexBean bean = new AComplexBean();
+        Assert.assertEquals(67898, def.readInt(bean, "intVal"));
+        Assert.assertEquals(34, def.readLong(bean, "lngVal"));
+        Assert.assertEquals(123.33, def.readDouble(bean, "dblVal"));
+        Assert.assertTrue(def.readBoolean(bean, "boolVal"));
+        
+        def.writeInt(bean, "intVal", 5);
+        def.writeLong(bean, "lngVal", 6);
+        def.writeDouble(bean, "dblVal", 7.5);
+        def.writeBoolean(bean, "boolVal", false);
+        Assert.assertEquals(5, bean.getIntVal());
+        Assert.assertEquals(6, bean.getLngVal());
+        Assert.assertEquals(7.5, bean.getDblVal());
+        Assert.assertFalse(bean.isBoolVal());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void failPrimitiveReadIfWrongType() {
+        BeanDefinition def = new BeanDefinitionImpl(AComplexBean.class);
+        def.readInt(new AComplexBean(), "lngVal");
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void failPrimitiveReadIfWrapperType() {
+        BeanDefinition def = new BeanDefinitionImpl(AnotherBean.class);
+        def.readDouble(new AnotherBean(), "dblVal2");
+    }
+    
+    @Test
+    public void primitiveAccess() {
+        BeanDefinition def = new BeanDefinitionImpl(AComplexBean.class);
+        Assert.assertFalse(def.getPropertyHandle("intVal").hasPrimitiveAccess());
+        
+        def = BeanDefinitionsSingleton.getInstance().getDefinition(AFieldBean.class);
+        Assert.assertTrue(def.getPropertyHandle("intVal").hasPrimitiveAccess());
+        Assert.assertFalse(def.getPropertyHandle("stringVal").hasPrimitiveAccess());
+        
+        def = new BeanDefinitionImpl(AComplexBean.class, null, false, true);
+        AComplexBean bean = new AComplexBean();
+        Assert.assertTrue(def.getPropertyHandle("intVal").hasPrimitiveAccess());
+        Assert.assertTrue(def.getPropertyHandle("dblVal").hasPrimitiveAccess());
+        Assert.assertFalse(def.getPropertyHandle("fltVal").hasPrimitiveAccess());
+        def.writeLong(bean, "lngVal", 6);
+        def.writeBoolean(bean, "boolVal", false);
+        Assert.assertEquals(6, def.readLong(bean, "lngVal"));
+        Assert.assertFalse(def.readBoolean(bean, "boolVal"));
+    }
+    
     @Test(expected=IllegalArgumentException.class)
     public void failReadIfNotReadable() {
         BeanDefinition def = new BeanDefinitionImpl(AnotherBean.class);
@@ -22,12 +22,31 @@
  */
 package org.talframework.util.beans.definition;
 
+import java.io.File;
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 import junit.framework.Assert;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.talframework.util.beans.AComplexBean;
+import org.talframework.util.beans.ASimilarBean;
+import org.talframework.util.beans.ASubBean;
 import org.talframework.util.beans.AnotherBean;
 import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.NearlySimilarBean;
+import org.talframework.util.beans.PropertyPath;
 
 /**
  * Tests the bean definition singleton
@@ -45,6 +64,243 @@ public class TestBeanDefinitionsSingleton {
         Assert.assertTrue(def == def2);
     }
 
+    @Test
+    public void concurrent() throws Exception {
+        final BeanDefinition[] defs = new BeanDefinition[8];
+        Thread[] threads = new Thread[defs.length];
+        for( int i = 0 ; i < threads.length ; i++ ) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    defs[index] = BeanDefinitionsSingleton.getInstance().getDefinition(NearlySimilarBean.class);
+                }
+            });
+        }
+        
+        for( Thread t : threads ) t.start();
+        for( Thread t : threads ) t.join();
+        
+        for( BeanDefinition def : defs ) {
+            Assert.assertNotNull(def);
+            Assert.assertTrue(def == defs[0]);
+        }
+    }
+
+    @Test
+    public void weakKeys() {
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        BeanDefinition def = singleton.getDefinition(AComplexBean.class);
+        try {
+            singleton.setWeakKeys(true);
+            Assert.assertTrue(def == singleton.getDefinition(AComplexBean.class));
+            
+            BeanDefinition def2 = singleton.getDefinition(ASimilarBean.class);
+            Assert.assertTrue(def2 == singleton.getDefinition(ASimilarBean.class));
+        }
+        finally {
+            singleton.setWeakKeys(false);
+        }
+    }
+    
+    @Test
+    public void keepDefinitionsOfReachableClasses() throws Exception {
+        DefinitionCache cache = new DefinitionCache(true, 10, true, null);
+        Class<?> unshared = loadUnshared(AComplexBean.class);
+        WeakReference<BeanDefinition> def = new WeakReference<BeanDefinition>(cache.get(unshared));
+        
+        for( int i = 0 ; i < 5 ; i++ ) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNotNull(def.get());
+        Assert.assertSame(def.get(), cache.get(unshared));
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+    
+    @Test
+    public void releaseInvalidatedClasses() throws Exception {
+        DefinitionCache cache = new DefinitionCache(true, 10, true, null);
+        Class<?> unshared = loadUnshared(AComplexBean.class);
+        WeakReference<Class<?>> type = new WeakReference<Class<?>>(unshared);
+        cache.get(AnotherBean.class);
+        cache.get(unshared);
+        Assert.assertEquals(2, cache.size());
+        
+        // Once invalidated neither the cache nor the introspector may stop it being collected
+        Assert.assertEquals(1, cache.invalidate(unshared.getClassLoader()));
+        unshared = null;
+        for( int i = 0 ; i < 100 && type.get() != null ; i++ ) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(type.get());
+        Assert.assertEquals(1, cache.size());
+        
+        // The removed key no longer takes a place in the eviction order
+        for( int i = 0 ; i < 9 ; i++ ) cache.get(loadUnshared(ASimilarBean.class));
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+    
+    /**
+     * Loads the class in a classloader of its own that is 
+     * not shared with the cache
+     */
+    private Class<?> loadUnshared(Class<?> type) throws Exception {
+        URL location = type.getProtectionDomain().getCodeSource().getLocation();
+        return new URLClassLoader(new URL[]{location}, null).loadClass(type.getName());
+    }
+    
+    @Test
+    public void boundedWithStatistics() {
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        try {
+            singleton.setMaximumSize(2);
+            singleton.setRecordStatistics(true);
+            Assert.assertTrue(singleton.getSize() <= 2);
+            
+            singleton.getDefinition(AComplexBean.class);
+            singleton.getDefinition(AnotherBean.class);
+            singleton.getDefinition(AnotherBean.class);
+            singleton.getDefinition(ASimilarBean.class);
+            
+            Assert.assertEquals(2, singleton.getSize());
+            Assert.assertTrue(singleton.getHitCount() >= 1);
+            Assert.assertTrue(singleton.getMissCount() >= 1);
+            Assert.assertTrue(singleton.getEvictionCount() >= 1);
+        }
+        finally {
+            singleton.setMaximumSize(0);
+            singleton.setRecordStatistics(false);
+        }
+    }
+
+    @Test
+    public void warmUp() {
+        int created = BeanDefinitionsSingleton.getInstance().warmUp(Arrays.<Class<?>>asList(AComplexBean.class, AnotherBean.class));
+        Assert.assertEquals(2, created);
+    }
+    
+    @Test
+    public void warmUpPackage() {
+        int created = BeanDefinitionsSingleton.getInstance().warmUp("org.talframework.util.beans.mapper");
+        Assert.assertTrue(created >= 2);
+    }
+    
+    @Test
+    public void findClassesInDirectoryWithPlus() throws Exception {
+        File dir = File.createTempFile("warm+up", "");
+        Assert.assertTrue(dir.delete());
+        File pkg = new File(dir, "org/talframework/util/beans");
+        Assert.assertTrue(pkg.mkdirs());
+        File file = new File(pkg, "AnotherBean.class");
+        
+        InputStream in = AnotherBean.class.getResourceAsStream("AnotherBean.class");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buf = new byte[4096];
+            int n = 0;
+            while( (n = in.read(buf)) > 0 ) out.write(buf, 0, n);
+        }
+        finally {
+            out.close();
+            in.close();
+        }
+        
+        try {
+            ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+            Collection<Class<?>> found = new DefinitionWarmer(BeanDefinitionsSingleton.getInstance(), 1).findClasses(loader, "org.talframework.util.beans");
+            Assert.assertEquals(1, found.size());
+            Assert.assertEquals(AnotherBean.class.getName(), found.iterator().next().getName());
+        }
+        finally {
+            file.delete();
+            for( File parent = pkg ; !parent.equals(dir.getParentFile()) ; parent = parent.getParentFile() ) parent.delete();
+        }
+    }
+
+    @Test
+    public void recordProfile() throws Exception {
+        File file = File.createTempFile("profile", ".txt");
+        file.deleteOnExit();
+        
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        try {
+            singleton.recordProfile(file);
+            singleton.getDefinition(java.awt.Point.class);
+            singleton.writeProfile();
+        }
+        finally {
+            singleton.stopProfile();
+        }
+        
+        Assert.assertTrue(DefinitionProfile.read(file).contains("java.awt.Point"));
+    }
+    
+    @Test
+    public void rerecordProfile() throws Exception {
+        File file = File.createTempFile("profile", ".txt");
+        file.deleteOnExit();
+        
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        try {
+            singleton.invalidateAll();
+            singleton.recordProfile(file);
+            singleton.getDefinition(java.awt.Point.class);
+            singleton.getDefinition(java.awt.Dimension.class);
+            singleton.writeProfile();
+            List<String> recorded = DefinitionProfile.read(file);
+            Assert.assertTrue(recorded.contains("java.awt.Point"));
+            
+            // As on a restart the replayed classes must be recorded again
+            singleton.invalidateAll();
+            singleton.startProfile(file).join();
+            singleton.writeProfile();
+            Assert.assertEquals(recorded, DefinitionProfile.read(file));
+        }
+        finally {
+            singleton.stopProfile();
+        }
+    }
+    
+    @Test
+    public void startWithUnreadableProfile() throws Exception {
+        File file = File.createTempFile("profile", ".txt");
+        file.deleteOnExit();
+        file.setReadable(false);
+        Assume.assumeTrue(!file.canRead());
+        
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        try {
+            Assert.assertNull(singleton.startProfile(file));
+        }
+        finally {
+            singleton.stopProfile();
+            file.setReadable(true);
+        }
+    }
+    
+    @Test
+    public void replayProfile() throws Exception {
+        File file = File.createTempFile("profile", ".txt");
+        file.deleteOnExit();
+        FileWriter out = new FileWriter(file);
+        out.write("# Test profile\njava.awt.Insets\nno.such.Class\n");
+        out.close();
+        
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        try {
+            singleton.setRecordStatistics(true);
+            singleton.replayProfile(file).join();
+            Assert.assertEquals(1, singleton.getMissCount());
+            
+            singleton.getDefinition(java.awt.Insets.class);
+            Assert.assertEquals(1, singleton.getMissCount());
+        }
+        finally {
+            singleton.setRecordStatistics(false);
+        }
+    }
+
     @Test
     public void register() {
         BeanDefinition def = new BeanDefinitionImpl(AnotherBean.class);
@@ -53,4 +309,53 @@ public class TestBeanDefinitionsSingleton {
         BeanDefinition def2 = BeanDefinitionsSingleton.getInstance().getDefinition(AnotherBean.class);
         Assert.assertTrue(def == def2);
     }
+    
+    @Test
+    public void invalidate() {
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        BeanDefinition def = singleton.getDefinition(AnotherBean.class);
+        BeanDefinition subDef = singleton.getDefinition(ASubBean.class);
+        BeanDefinition otherDef = singleton.getDefinition(AComplexBean.class);
+        long version = singleton.getVersion();
+        
+        Assert.assertEquals(2, singleton.invalidate(AnotherBean.class));
+        Assert.assertEquals(version + 1, singleton.getVersion());
+        Assert.assertNotSame(def, singleton.getDefinition(AnotherBean.class));
+        Assert.assertNotSame(subDef, singleton.getDefinition(ASubBean.class));
+        Assert.assertSame(otherDef, singleton.getDefinition(AComplexBean.class));
+        
+        // Existing definitions are still usable
+        ASubBean bean = new ASubBean();
+        subDef.write(bean, "dblVal2", 2.5);
+        Assert.assertEquals(2.5, bean.getDblVal2());
+        
+        Assert.assertTrue(singleton.invalidate(AComplexBean.class.getClassLoader()) >= 3);
+        Assert.assertNotSame(otherDef, singleton.getDefinition(AComplexBean.class));
+        
+        singleton.invalidateAll();
+        Assert.assertEquals(0, singleton.getSize());
+        Assert.assertEquals(version + 3, singleton.getVersion());
+    }
+    
+    @Test
+    public void invalidateIntrospectedClasses() throws Exception {
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        singleton.getDefinition(AnotherBean.class);
+        BeanInfo info = Introspector.getBeanInfo(AnotherBean.class);
+        Assert.assertSame(info, Introspector.getBeanInfo(AnotherBean.class));
+        
+        singleton.invalidate(AnotherBean.class);
+        Assert.assertNotSame(info, Introspector.getBeanInfo(AnotherBean.class));
+    }
+    
+    @Test
+    public void invalidateCompiledPaths() {
+        BeanDefinitionsSingleton singleton = BeanDefinitionsSingleton.getInstance();
+        BeanDefinition def = singleton.getDefinition(AComplexBean.class);
+        PropertyPath path = def.getPropertyPath("objectVal.stringVal");
+        Assert.assertSame(path, def.getPropertyPath("objectVal.stringVal"));
+        
+        singleton.invalidate(AnotherBean.class);
+        Assert.assertNotSame(path, def.getPropertyPath("objectVal.stringVal"));
+    }
 }
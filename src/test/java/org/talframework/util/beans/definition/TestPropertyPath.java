@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.definition;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.talframework.util.beans.AComplexBean;
+import org.talframework.util.beans.AnotherBean;
+import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.PropertyPath;
+
+/**
+ * This class tests the {@link CompiledPropertyPath}.
+ *
+ * @author Tom Spencer
+ */
+public class TestPropertyPath {
+
+    @Test
+    public void read() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AComplexBean.class);
+        
+        AComplexBean bean = new AComplexBean();
+        Assert.assertEquals("Val3", def.getPropertyPath("arrayVal[2]").read(bean));
+        bean.setObjectVal(null);
+        Assert.assertNull(def.getPropertyPath("objectVal.stringVal").read(bean));
+        
+        bean.setObjectVal(new AnotherBean());
+        bean.getObjectVal().setStringVal("Nested");
+        Assert.assertEquals("Nested", def.getPropertyPath("objectVal.stringVal").read(bean));
+        Assert.assertEquals(bean.getObjectVal().getCollectionVal().get(1), def.getPropertyPath("objectVal.collectionVal[1]").read(bean));
+        Assert.assertEquals(bean.getObjectVal().getMapVal().get("Key1"), def.getPropertyPath("objectVal.mapVal['Key1']").read(bean));
+        Assert.assertNull(def.getPropertyPath("objectVal.collectionVal[100]").read(bean));
+    }
+    
+    @Test
+    public void write() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AComplexBean.class);
+        
+        AComplexBean bean = new AComplexBean();
+        bean.setObjectVal(null);
+        def.getPropertyPath("objectVal.stringVal").write(bean, "Created", true);
+        Assert.assertEquals("Created", bean.getObjectVal().getStringVal());
+        
+        def.getPropertyPath("objectVal.mapVal[Key3]").write(bean, "Map3");
+        Assert.assertEquals("Map3", bean.getObjectVal().getMapVal().get("Key3"));
+        
+        def.getPropertyPath("arrayVal[0]").write(bean, "Changed");
+        Assert.assertEquals("Changed", bean.getArrayVal()[0]);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void failWriteThroughNull() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AComplexBean.class);
+        AComplexBean bean = new AComplexBean();
+        bean.setObjectVal(null);
+        def.getPropertyPath("objectVal.stringVal").write(bean, "Fail");
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void failInvalidPath() {
+        BeanDefinitionsSingleton.getInstance().getDefinition(AComplexBean.class).getPropertyPath("objectVal..stringVal");
+    }
+    
+    @Test
+    public void cached() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AComplexBean.class);
+        PropertyPath path = def.getPropertyPath("objectVal.stringVal");
+        Assert.assertSame(path, def.getPropertyPath("objectVal.stringVal"));
+        Assert.assertEquals(String.class, path.getType());
+        Assert.assertEquals(AComplexBean.class, path.getRootType());
+    }
+    
+    @Test
+    public void evictLeastRecentlyUsed() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AComplexBean.class);
+        PropertyPath path = def.getPropertyPath("objectVal.mapVal[Recent]");
+        PropertyPath first = def.getPropertyPath("objectVal.mapVal[Key0]");
+        for( int i = 1 ; i < 1000 ; i++ ) {
+            def.getPropertyPath("objectVal.mapVal[Key" + i + "]");
+            if( i % 10 == 0 ) Assert.assertSame(path, def.getPropertyPath("objectVal.mapVal[Recent]"));
+        }
+        
+        // Recent was kept as it was used, Key0 was not so is compiled again
+        Assert.assertSame(path, def.getPropertyPath("objectVal.mapVal[Recent]"));
+        Assert.assertNotSame(first, def.getPropertyPath("objectVal.mapVal[Key0]"));
+    }
+    
+    @Test
+    public void typedKeys() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AKeyedBean.class);
+        
+        AKeyedBean bean = new AKeyedBean();
+        bean.getNumbered().put(1, "One");
+        bean.getTimed().put(TimeUnit.SECONDS, "Seconds");
+        Assert.assertEquals("One", def.getPropertyPath("numbered[1]").read(bean));
+        Assert.assertEquals("Seconds", def.getPropertyPath("timed['SECONDS']").read(bean));
+        
+        def.getPropertyPath("numbered[2]").write(bean, "Two");
+        Assert.assertEquals("Two", bean.getNumbered().get(2));
+        Assert.assertFalse(((Map<?, ?>)bean.getNumbered()).containsKey("2"));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void failInvalidKey() {
+        BeanDefinitionsSingleton.getInstance().getDefinition(AKeyedBean.class).getPropertyPath("numbered[One]");
+    }
+    
+    /**
+     * Bean holding maps with keys that are not strings
+     */
+    public static class AKeyedBean {
+        private Map<Integer, String> numbered = new HashMap<Integer, String>();
+        private Map<TimeUnit, String> timed = new HashMap<TimeUnit, String>();
+        
+        public Map<Integer, String> getNumbered() {
+            return numbered;
+        }
+        
+        public void setNumbered(Map<Integer, String> numbered) {
+            this.numbered = numbered;
+        }
+        
+        public Map<TimeUnit, String> getTimed() {
+            return timed;
+        }
+        
+        public void setTimed(Map<TimeUnit, String> timed) {
+            this.timed = timed;
+        }
+    }
+}
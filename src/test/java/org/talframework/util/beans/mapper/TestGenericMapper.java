@@ -22,14 +22,21 @@
  */
 package org.talframework.util.beans.mapper;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Assert;
 
 import org.junit.Ignore;
 import org.junit.Test;
 import org.talframework.util.beans.ASimilarBean;
+import org.talframework.util.beans.AnImmutableBean;
 import org.talframework.util.beans.AnotherBean;
 import org.talframework.util.beans.BeanDefinition;
 import org.talframework.util.beans.NearlySimilar;
@@ -68,6 +75,250 @@ public class TestGenericMapper {
         Assert.assertEquals(bean.toString(), similar.toString());
     }
     
+    public static class ASource {
+        public String getStringVal() { return "Mapped"; }
+        public String getUnmappedVal() { throw new IllegalStateException("Unmapped property read"); }
+    }
+    
+    public static class ATarget {
+        private String stringVal;
+        public String getStringVal() { return stringVal; }
+        public void setStringVal(String stringVal) { this.stringVal = stringVal; }
+    }
+    
+    @Test
+    public void onlyMappedPropertiesRead() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(BeanDefinitionsSingleton.getInstance().getDefinition(ASource.class));
+        mapper.setDestDefinition(BeanDefinitionsSingleton.getInstance().getDefinition(ATarget.class));
+        
+        Assert.assertEquals("Mapped", mapper.map(new ASource(), ATarget.class).getStringVal());
+    }
+    
+    @Test
+    public void reconfigure() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(NearlySimilarBean.class);
+        
+        AnotherBean bean = new AnotherBean();
+        bean.setStringVal("Changed");
+        NearlySimilarBean similar = mapper.map(bean, NearlySimilarBean.class);
+        Assert.assertFalse("Changed".equals(similar.getDifferentVal()));
+        
+        mapper.addNameVariation("stringVal", "differentVal");
+        similar = mapper.map(bean, NearlySimilarBean.class);
+        Assert.assertEquals("Changed", similar.getDifferentVal());
+    }
+    
+    @Test
+    public void invalidated() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(ASimilarBean.class);
+        
+        AnotherBean bean = new AnotherBean();
+        mapper.map(bean, ASimilarBean.class);
+        BeanDefinition def = mapper.getSourceDefinition();
+        
+        BeanDefinitionsSingleton.getInstance().invalidate(AnotherBean.class);
+        ASimilarBean similar = mapper.map(bean, ASimilarBean.class);
+        Assert.assertEquals(bean.toString(), similar.toString());
+        Assert.assertNotSame(def, mapper.getSourceDefinition());
+        Assert.assertSame(BeanDefinitionsSingleton.getInstance().getDefinition(AnotherBean.class), mapper.getSourceDefinition());
+    }
+    
+    @Test
+    public void generated() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(NearlySimilarBean.class);
+        mapper.addNameVariation("stringVal", "differentVal");
+        mapper.setGenerated(true);
+        
+        AnotherBean bean = new AnotherBean();
+        bean.setStringVal("Generated");
+        NearlySimilarBean similar = mapper.map(bean, NearlySimilarBean.class);
+        Assert.assertEquals("Generated", similar.getDifferentVal());
+        Assert.assertEquals(bean.toString(), similar.toString());
+        
+        NearlySimilar existing = new NearlySimilarBean();
+        mapper.map(bean, existing);
+        Assert.assertEquals(bean.toString(), existing.toString());
+        
+        MappingPlan plan = new MappingPlan(mapper.getSourceDefinition(), mapper.getDestDefinition(), mapper.getNameVariations(), null, true);
+        Assert.assertTrue(plan.isGenerated());
+    }
+    
+    public static class APrimitiveSource {
+        public int getCount() { return 5; }
+        public int getTotal() { return 7; }
+        public Integer getBoxed() { return 9; }
+    }
+    
+    public static class APrimitiveTarget {
+        private int count;
+        private Integer total;
+        private int boxed;
+        public int getCount() { return count; }
+        public void setCount(int count) { this.count = count; }
+        public Integer getTotal() { return total; }
+        public void setTotal(Integer total) { this.total = total; }
+        public int getBoxed() { return boxed; }
+        public void setBoxed(int boxed) { this.boxed = boxed; }
+    }
+    
+    @Test
+    public void primitives() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(APrimitiveSource.class);
+        mapper.setDestDefinition(APrimitiveTarget.class);
+        
+        // Mapped reflectively and then by a generated class
+        Map<String, String> names = new HashMap<String, String>();
+        names.put("boxed", "unmapped");
+        for( int i = 0 ; i < 2 ; i++ ) {
+            mapper.setNameVariations(names);
+            mapper.setGenerated(i == 1);
+            APrimitiveTarget target = mapper.map(new APrimitiveSource(), APrimitiveTarget.class);
+            Assert.assertEquals(5, target.getCount());
+            Assert.assertEquals(Integer.valueOf(7), target.getTotal());
+            Assert.assertEquals(i == 1, new MappingPlan(mapper.getSourceDefinition(), mapper.getDestDefinition(), names, null, i == 1).isGenerated());
+        }
+        
+        // Wrapper to primitive is only mapped reflectively
+        mapper.setNameVariations(null);
+        Assert.assertEquals(9, mapper.map(new APrimitiveSource(), APrimitiveTarget.class).getBoxed());
+    }
+    
+    @Test
+    public void generatedConcurrently() throws Exception {
+        final GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(ASimilarBean.class);
+        mapper.setGenerated(true);
+        
+        final AnotherBean bean = new AnotherBean();
+        final String[] results = new String[8];
+        Thread[] threads = new Thread[results.length];
+        for( int i = 0 ; i < threads.length ; i++ ) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    results[index] = mapper.map(bean, ASimilarBean.class).toString();
+                }
+            });
+        }
+        
+        for( Thread t : threads ) t.start();
+        for( Thread t : threads ) t.join();
+        
+        for( String result : results ) Assert.assertEquals(bean.toString(), result);
+    }
+    
+    @Test
+    public void generatedFallback() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(AnImmutableBean.class);
+        mapper.setGenerated(true);
+        
+        AnotherBean bean = new AnotherBean();
+        bean.setStringVal("Immutable");
+        AnImmutableBean immutable = mapper.map(bean, AnImmutableBean.class);
+        Assert.assertEquals("Immutable", immutable.getStringVal());
+        
+        MappingPlan plan = new MappingPlan(mapper.getSourceDefinition(), mapper.getDestDefinition(), null, null, true);
+        Assert.assertFalse(plan.isGenerated());
+    }
+    
+    @Test
+    public void batch() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(ASimilarBean.class);
+        
+        List<AnotherBean> beans = new ArrayList<AnotherBean>();
+        for( int i = 0 ; i < 10 ; i++ ) beans.add(new AnotherBean("Bean " + i));
+        beans.set(5, null);
+        
+        List<ASimilarBean> similar = mapper.mapAll(beans, ASimilarBean.class);
+        Assert.assertEquals(10, similar.size());
+        Assert.assertNull(similar.get(5));
+        Assert.assertEquals(beans.get(9).toString(), similar.get(9).toString());
+        
+        ASimilarBean[] array = mapper.mapAll(beans.toArray(new AnotherBean[0]), ASimilarBean.class);
+        Assert.assertEquals(10, array.length);
+        Assert.assertEquals(beans.get(0).toString(), array[0].toString());
+    }
+    
+    @Test
+    public void parallelBatch() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            GenericMapper mapper = new GenericMapper();
+            mapper.setSourceDefinition(AnotherBean.class);
+            mapper.setDestDefinition(ASimilarBean.class);
+            mapper.setExecutor(executor);
+            mapper.setParallelThreshold(3);
+            
+            List<AnotherBean> beans = new ArrayList<AnotherBean>();
+            for( int i = 0 ; i < 10 ; i++ ) beans.add(new AnotherBean("Bean " + i));
+            
+            List<ASimilarBean> similar = mapper.mapAll(beans, ASimilarBean.class);
+            Assert.assertEquals(10, similar.size());
+            for( int i = 0 ; i < 10 ; i++ ) Assert.assertEquals(beans.get(i).toString(), similar.get(i).toString());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void lazy() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(ASimilarBean.class);
+        
+        final int[] taken = new int[1];
+        final Iterator<AnotherBean> beans = Arrays.asList(new AnotherBean("First"), null, new AnotherBean("Last")).iterator();
+        Iterator<AnotherBean> counting = new Iterator<AnotherBean>() {
+            public boolean hasNext() { return beans.hasNext(); }
+            public AnotherBean next() { taken[0]++; return beans.next(); }
+            public void remove() { beans.remove(); }
+        };
+        
+        Iterator<ASimilarBean> similar = mapper.mapIterator(counting, ASimilarBean.class);
+        Assert.assertEquals(0, taken[0]);
+        Assert.assertEquals("First", similar.next().getStringVal());
+        Assert.assertEquals(1, taken[0]);
+        Assert.assertNull(similar.next());
+        Assert.assertEquals("Last", similar.next().getStringVal());
+        Assert.assertFalse(similar.hasNext());
+        
+        int count = 0;
+        for( ASimilarBean bean : mapper.mapIterable(Arrays.asList(new AnotherBean("A"), new AnotherBean("B")), ASimilarBean.class) ) {
+            Assert.assertNotNull(bean);
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+    
+    @Test
+    public void immutable() {
+        GenericMapper mapper = new GenericMapper();
+        mapper.setSourceDefinition(AnotherBean.class);
+        mapper.setDestDefinition(AnImmutableBean.class);
+        
+        AnotherBean bean = new AnotherBean();
+        bean.setStringVal("Immutable");
+        AnImmutableBean immutable = mapper.map(bean, AnImmutableBean.class);
+        Assert.assertEquals("Immutable", immutable.getStringVal());
+        Assert.assertEquals(bean.getIntVal2(), immutable.getIntVal2());
+        Assert.assertEquals(bean.getShrVal2(), immutable.getShrVal2());
+        Assert.assertEquals(0, immutable.getCount());
+    }
+    
     @Test
     @Ignore("Test not yet written")
     public void customMapping() {
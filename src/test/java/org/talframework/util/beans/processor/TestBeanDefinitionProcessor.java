@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.processor;
+
+import java.lang.reflect.ParameterizedType;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.talframework.util.beans.AGeneratedBean;
+import org.talframework.util.beans.BeanDefinition;
+import org.talframework.util.beans.definition.BeanDefinitionImpl;
+import org.talframework.util.beans.definition.BeanDefinitionsSingleton;
+
+/**
+ * This class tests the definitions generated by the
+ * {@link BeanDefinitionProcessor} when compiling the tests.
+ *
+ * @author Tom Spencer
+ */
+public class TestBeanDefinitionProcessor {
+
+    @Test
+    public void generated() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AGeneratedBean.class);
+        Assert.assertEquals("org.talframework.util.beans.AGeneratedBean_BeanDefinition", def.getClass().getName());
+        Assert.assertEquals(AGeneratedBean.class, def.getType());
+    }
+    
+    @Test
+    public void sameAsIntrospected() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AGeneratedBean.class);
+        BeanDefinition introspected = new BeanDefinitionImpl(AGeneratedBean.class);
+        
+        Assert.assertEquals(introspected.getProperties(), def.getProperties());
+        Assert.assertEquals(introspected.getBalancedProperties(), def.getBalancedProperties());
+        Assert.assertEquals(introspected.getReadOnlyProperties(), def.getReadOnlyProperties());
+        Assert.assertEquals(introspected.getSetOnlyProperties(), def.getSetOnlyProperties());
+        for( String prop : def.getProperties() ) {
+            Assert.assertEquals(introspected.getPropertyType(prop), def.getPropertyType(prop));
+        }
+        
+        Assert.assertTrue(def.getPropertyGenericType("listVal") instanceof ParameterizedType);
+    }
+    
+    @Test
+    public void readAndWrite() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AGeneratedBean.class);
+        
+        AGeneratedBean bean = (AGeneratedBean)def.newInstance();
+        Assert.assertEquals("String", def.read(bean, "stringVal"));
+        Assert.assertEquals(5, def.readInt(bean, "intVal"));
+        Assert.assertEquals(Long.valueOf(6), def.read(bean, "lngVal"));
+        
+        def.write(bean, "stringVal", "Changed");
+        def.writeInt(bean, "intVal", 10);
+        def.write(bean, "dblVal", 1.5);
+        def.writeBoolean(bean, "boolVal", false);
+        Assert.assertEquals("Changed", bean.getStringVal());
+        Assert.assertEquals(10, bean.getIntVal());
+        Assert.assertEquals(1.5, bean.getDblVal());
+        Assert.assertFalse(bean.isBoolVal());
+        
+        Assert.assertTrue(def.getPropertyHandle("intVal").hasPrimitiveAccess());
+        Assert.assertFalse(def.getPropertyHandle("stringVal").hasPrimitiveAccess());
+    }
+    
+    @Test
+    public void writeNullToPrimitive() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AGeneratedBean.class);
+        
+        AGeneratedBean bean = new AGeneratedBean();
+        bean.setIntVal(3);
+        def.write(bean, "intVal", null);
+        Assert.assertEquals(3, bean.getIntVal());
+        
+        def.write(bean, "stringVal", null);
+        Assert.assertNull(bean.getStringVal());
+    }
+    
+    @Test
+    public void sameMethodsAsIntrospected() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AGeneratedBean.class);
+        BeanDefinition introspected = new BeanDefinitionImpl(AGeneratedBean.class);
+        
+        // Handles are equal if they have the same getter and setter
+        for( int i = 0 ; i < 2 ; i++ ) {
+            for( String prop : def.getProperties() ) {
+                Assert.assertEquals(introspected.getPropertyHandle(prop), def.getPropertyHandle(prop));
+            }
+        }
+    }
+    
+    @Test
+    public void bulk() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AGeneratedBean.class);
+        
+        AGeneratedBean bean = new AGeneratedBean();
+        bean.setStringVal("Bulk");
+        Object[] values = new Object[def.getPropertyHandles().size()];
+        def.readAll(bean, values);
+        Assert.assertEquals("Bulk", values[def.getPropertyHandle("stringVal").getIndex()]);
+        Assert.assertEquals(5, values[def.getPropertyHandle("intVal").getIndex()]);
+        
+        values[def.getPropertyHandle("intVal").getIndex()] = null;
+        AGeneratedBean copy = new AGeneratedBean();
+        copy.setIntVal(3);
+        def.writeAll(copy, values);
+        Assert.assertEquals("Bulk", copy.getStringVal());
+        Assert.assertEquals(3, copy.getIntVal());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void failWriteIfNotWritable() {
+        BeanDefinition def = BeanDefinitionsSingleton.getInstance().getDefinition(AGeneratedBean.class);
+        def.write(new AGeneratedBean(), "readOnlyVal", "Changed");
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2011 Tom Spencer <thegaffer@tpspencer.com>
+ *
+ * This file is part of TAL.
+ *
+ * TAL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * TAL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with TAL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Note on dates: Year above is the year this code was built. This
+ * project first created in 2008. Code was created between these two
+ * years inclusive.
+ */
+package org.talframework.util.beans.processor;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.talframework.util.beans.AnotherBean;
+import org.talframework.util.beans.NearlySimilarBean;
+import org.talframework.util.beans.mapper.Mapper;
+
+/**
+ * This class tests the mappers generated by the
+ * {@link MapperProcessor} when compiling the tests.
+ *
+ * @author Tom Spencer
+ */
+public class TestMapperProcessor {
+
+    @Test
+    public void generated() throws Exception {
+        Mapper mapper = (Mapper)Class.forName("org.talframework.util.beans.AGeneratedMapping_Mapper").newInstance();
+        
+        AnotherBean bean = new AnotherBean();
+        bean.setStringVal("Generated");
+        NearlySimilarBean similar = mapper.map(bean, NearlySimilarBean.class);
+        Assert.assertEquals("Generated", similar.getDifferentVal());
+        Assert.assertEquals(bean.toString(), similar.toString());
+        
+        NearlySimilarBean existing = new NearlySimilarBean();
+        mapper.map(bean, existing);
+        Assert.assertEquals(bean.toString(), existing.toString());
+        Assert.assertNull(mapper.map(null, NearlySimilarBean.class));
+    }
+    
+    @Test
+    public void failUnmappable() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                "@org.talframework.util.beans.mapper.GenerateMapper(source=org.talframework.util.beans.AnotherBean.class, target=org.talframework.util.beans.NearlySimilarBean.class)\n" +
+                "public interface BadMapping {}\n");
+        
+        Assert.assertEquals(2, errors.size());
+        Assert.assertTrue(errors.get(0).getMessage(null).contains("[readOnlyVal]"));
+        Assert.assertTrue(errors.get(1).getMessage(null).contains("[stringVal]"));
+    }
+    
+    @Test
+    public void failInvalidVariation() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                "@org.talframework.util.beans.mapper.GenerateMapper(source=org.talframework.util.beans.AnotherBean.class, target=org.talframework.util.beans.NearlySimilarBean.class, nameVariations=\"unknown=differentVal\", ignore={\"readOnlyVal\", \"stringVal\"})\n" +
+                "public interface BadMapping {}\n");
+        
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0).getMessage(null).contains("[unknown]"));
+    }
+    
+    /**
+     * Helper to run the processor over the source and return the errors
+     */
+    private List<Diagnostic<? extends JavaFileObject>> compile(final String source) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File dir = File.createTempFile("mapper", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///BadMapping.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-proc:only", "-s", dir.getPath(),
+                "-processor", MapperProcessor.class.getName());
+        compiler.getTask(null, null, diagnostics, options, null, Collections.singletonList(file)).call();
+        
+        List<Diagnostic<? extends JavaFileObject>> ret = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        for( Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics() ) {
+            if( diagnostic.getKind() == Diagnostic.Kind.ERROR ) ret.add(diagnostic);
+        }
+        return ret;
+    }
+}